@@ -0,0 +1,95 @@
+package me.stavgordeev.plugin.Benchmarks;
+
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Blocks.BlockWriter;
+import me.stavgordeev.plugin.Blocks.WritePriority;
+import me.stavgordeev.plugin.Constants.DiscoMayhemConst;
+import me.stavgordeev.plugin.Floors.FloorGrid;
+import me.stavgordeev.plugin.Utils;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The floor routines of DiscoMayhem: laying the starting floor, changing a floor's colors and removing every color but the chosen one.
+ * Each benchmark writes through the block write queue into a {@link MemoryBlockSink} and flushes it, the way a tick of the game would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FloorBenchmark {
+    private static final int Y = 100;
+
+    // 7 is the largest floor DiscoMayhem spawns, 50 is a floor that covers the whole game area.
+    @Param({"7", "50"})
+    public int radius;
+
+    private BlockWriteQueue blockWriteQueue;
+    private MemoryBlockSink sink;
+    private BlockWriter writer;
+    private FloorGrid floor;
+    private Random random;
+    private Location center;
+
+    @Setup
+    public void setup() {
+        blockWriteQueue = new BlockWriteQueue(BlockPalette.get(), Double.MAX_VALUE);
+        sink = new MemoryBlockSink(-radius, Y, -radius, radius, Y, radius);
+        writer = blockWriteQueue.writerFor(sink);
+        floor = new FloorGrid(0, Y, 0, radius, radius, DiscoMayhemConst.FloorLogic.LIST_OF_FLOOR_MATERIALS);
+        random = new Random(42);
+        center = new Location(null, 0, Y, 0);
+
+        floor.randomize(random, writer, WritePriority.CRITICAL);
+        blockWriteQueue.flushAll();
+    }
+
+    /**
+     * {@link Utils#initFloor}, which DiscoMayhem uses for the platform the players start on.
+     */
+    @Benchmark
+    public int initFloor() {
+        Utils.initFloor(radius, radius, Material.RED_WOOL, center, writer);
+        blockWriteQueue.flushAll();
+        return sink.getBlockState(0, Y, 0);
+    }
+
+    /**
+     * One color change of a floor, what DiscoMayhem.changeFloor() does to every floor on each cycle step.
+     */
+    @Benchmark
+    public int changeFloor() {
+        int written = floor.randomize(random, writer, WritePriority.CRITICAL);
+        blockWriteQueue.flushAll();
+        return written;
+    }
+
+    /**
+     * A color change followed by removing every block that isn't the chosen color, what DiscoMayhem.removeFloorExceptForChosenMaterial() does.
+     * The floor has to be refilled before anything can be removed again, so the change is part of the measurement. Subtract {@link #changeFloor()} to get the removal alone.
+     */
+    @Benchmark
+    public int changeThenRemoveFloorExceptForChosenMaterial() {
+        int written = floor.randomize(random, writer, WritePriority.CRITICAL);
+        written += floor.removeAllExcept(0, writer, WritePriority.CRITICAL);
+        blockWriteQueue.flushAll();
+        return written;
+    }
+}
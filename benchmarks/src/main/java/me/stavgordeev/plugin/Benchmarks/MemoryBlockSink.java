@@ -0,0 +1,54 @@
+package me.stavgordeev.plugin.Benchmarks;
+
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockSink;
+
+import java.util.Arrays;
+
+/**
+ * A world stand-in for the benchmarks: a box of block states held in one int array. Reads and writes outside the box are ignored and read as air.
+ * Writing to it costs next to nothing, so the benchmarks measure the plugin's own code and not the server's.
+ */
+public final class MemoryBlockSink implements BlockSink {
+    private final int minX, minY, minZ;
+    private final int sizeX, sizeY, sizeZ;
+    private final int[] states;
+
+    /**
+     * Creates a box of air. The bounds are inclusive.
+     */
+    public MemoryBlockSink(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = maxX - minX + 1;
+        this.sizeY = maxY - minY + 1;
+        this.sizeZ = maxZ - minZ + 1;
+        this.states = new int[sizeX * sizeY * sizeZ];
+    }
+
+    @Override
+    public int getBlockState(int x, int y, int z) {
+        int index = indexOf(x, y, z);
+        return index < 0 ? BlockPalette.AIR : states[index];
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, int stateId) {
+        int index = indexOf(x, y, z);
+        if (index >= 0) states[index] = stateId;
+    }
+
+    /**
+     * Sets every block of the box to air.
+     */
+    public void clear() {
+        Arrays.fill(states, BlockPalette.AIR);
+    }
+
+    private int indexOf(int x, int y, int z) {
+        int dx = x - minX, dy = y - minY, dz = z - minZ;
+        if (dx < 0 || dy < 0 || dz < 0 || dx >= sizeX || dy >= sizeY || dz >= sizeZ) return -1;
+        return (dx * sizeY + dy) * sizeZ + dz;
+    }
+}
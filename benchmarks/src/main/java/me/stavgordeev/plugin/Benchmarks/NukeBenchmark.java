@@ -0,0 +1,84 @@
+package me.stavgordeev.plugin.Benchmarks;
+
+import me.stavgordeev.plugin.Blocks.AreaClearer;
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Blocks.WritePriority;
+import me.stavgordeev.plugin.DataStructures.BlockPos;
+import me.stavgordeev.plugin.DataStructures.LongArrayList;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The main thread half of Utils.nukeGameArea(): queueing air at every position the chunk scan found, turning the writes still pending in the area into air,
+ * and flushing. The chunk scan itself reads chunk snapshots, which need a running server, so it isn't part of this benchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NukeBenchmark {
+    private static final int Y = 100;
+
+    // 50 is the game area of DiscoMayhem and BlueprintBazaar.
+    @Param({"16", "50"})
+    public int radius;
+
+    // How much of the area holds blocks, in percent. A game area is mostly air with a few floors and builds in it.
+    @Param({"5", "50"})
+    public int fillPercent;
+
+    private BlockWriteQueue blockWriteQueue;
+    private MemoryBlockSink sink;
+    private LongArrayList positionsToClear;
+    private long[] pendingWrites;
+    private int stoneId;
+
+    @Setup
+    public void setup() {
+        blockWriteQueue = new BlockWriteQueue(BlockPalette.get(), Double.MAX_VALUE);
+        sink = new MemoryBlockSink(-radius, Y - radius, -radius, radius, Y + radius, radius);
+        stoneId = BlockPalette.get().idOf(Material.STONE);
+
+        Random random = new Random(42);
+        positionsToClear = new LongArrayList(1024);
+        for (int x = -radius; x <= radius; x++) {
+            for (int y = Y - radius; y <= Y + radius; y++) {
+                for (int z = -radius; z <= radius; z++) {
+                    if (random.nextInt(100) < fillPercent) positionsToClear.add(BlockPos.pack(x, y, z));
+                }
+            }
+        }
+
+        // A game that ends mid-cycle still has some floor writes queued when the area is nuked.
+        pendingWrites = new long[(2 * radius + 1) * (2 * radius + 1) / 4];
+        for (int i = 0; i < pendingWrites.length; i++) {
+            pendingWrites[i] = BlockPos.pack(random.nextInt(2 * radius + 1) - radius, Y, random.nextInt(2 * radius + 1) - radius);
+        }
+    }
+
+    @Benchmark
+    public int nukeGameArea() {
+        for (long packed : pendingWrites) {
+            blockWriteQueue.setBlock(sink, BlockPos.unpackX(packed), BlockPos.unpackY(packed), BlockPos.unpackZ(packed), stoneId, WritePriority.CRITICAL);
+        }
+        AreaClearer.queueClear(blockWriteQueue, sink, positionsToClear, -radius, Y - radius, -radius, radius, Y + radius, radius);
+        blockWriteQueue.flushAll();
+        return positionsToClear.size();
+    }
+}
@@ -0,0 +1,119 @@
+package me.stavgordeev.plugin.Benchmarks;
+
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Blocks.BlockWriter;
+import me.stavgordeev.plugin.Blocks.WritePriority;
+import me.stavgordeev.plugin.Schematics.BakedBuild;
+import me.stavgordeev.plugin.Schematics.BuildBlocks;
+import me.stavgordeev.plugin.Schematics.PlotState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The paste BuildLoader does for a baked build: {@link BakedBuild#open opening} the baked file, queueing its blocks with queueNext() the way a paste
+ * does every tick, and flushing the queue.
+ * Baking itself reads the schematic with WorldEdit, which needs its platform to be loaded, so the builds are generated ones baked with {@link BakedBuild#write}.
+ * <p>
+ * Every paste alternates between two builds that differ in about a tenth of their blocks, like the builds of a round on the same plot.
+ * pasteBaked() writes every block of them, pasteBakedOverPlot() goes through a {@link PlotState} like a BlueprintBazaar plot, so only the blocks that differ are written.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchematicBenchmark {
+    private static final int Y = 100;
+    // Same as BuildLoader.BLOCKS_QUEUED_PER_TICK.
+    private static final int BLOCKS_QUEUED_PER_TICK = 8192;
+    private static final double CHANGED_FRACTION = 0.1;
+    private static final String[] STATES = {
+            "minecraft:air",
+            "minecraft:oak_planks",
+            "minecraft:stone_bricks",
+            "minecraft:glass",
+            "minecraft:oak_stairs[facing=east,half=bottom,shape=straight,waterlogged=false]",
+            "minecraft:oak_stairs[facing=west,half=top,shape=straight,waterlogged=false]",
+            "minecraft:oak_log[axis=y]",
+            "minecraft:lantern[hanging=false,waterlogged=false]",
+    };
+
+    // The side length of the build. BlueprintBazaar's builds fit in 9 blocks.
+    @Param({"9", "32"})
+    public int size;
+
+    private BlockWriteQueue blockWriteQueue;
+    private BlockWriter writer;
+    private final PlotState plot = new PlotState();
+    private final File[] builds = new File[2];
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        blockWriteQueue = new BlockWriteQueue(BlockPalette.get(), Double.MAX_VALUE);
+        writer = blockWriteQueue.writerFor(new MemoryBlockSink(0, Y, 0, size - 1, Y + size - 1, size - 1));
+
+        // In the order a build is baked in, y then z then x.
+        Random random = new Random(42);
+        String[] states = new String[size * size * size];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = STATES[random.nextInt(STATES.length)];
+        }
+        builds[0] = bake(states);
+        for (int i = 0; i < states.length; i++) {
+            if (random.nextDouble() < CHANGED_FRACTION) states[i] = STATES[random.nextInt(STATES.length)];
+        }
+        builds[1] = bake(states);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File build : builds) {
+            if (build != null) build.delete();
+        }
+    }
+
+    @Benchmark
+    public int pasteBaked() throws IOException {
+        return paste(writer);
+    }
+
+    @Benchmark
+    public int pasteBakedOverPlot() throws IOException {
+        return paste(plot.writerOver(writer));
+    }
+
+    private int paste(BlockWriter target) throws IOException {
+        BuildBlocks blocks = BakedBuild.open(builds[next], blockWriteQueue.getPalette(), 0, Y, 0);
+        next ^= 1;
+        while (blocks.queueNext(target, BLOCKS_QUEUED_PER_TICK, WritePriority.COSMETIC) > 0) {
+            // Every round of the loop is one tick of a paste.
+        }
+        blockWriteQueue.flushAll();
+        return blocks.size();
+    }
+
+    private File bake(String[] states) throws IOException {
+        File file = File.createTempFile("schematic-benchmark", ".baked");
+        file.deleteOnExit();
+        BakedBuild.write(file, states, size, size, size, 0, 0, 0);
+        return file;
+    }
+}
@@ -0,0 +1,86 @@
+package me.stavgordeev.plugin.Headless;
+
+import me.stavgordeev.plugin.Arenas.Arena;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Minigames.DiscoMayhem;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs complete DiscoMayhem matches on a {@link HeadlessServer}, from start() through the floor cycles to endGame() and the arena being restored,
+ * and reports how fast the ticks went. Meant for soak tests and for profiling the game logic without a server around it.
+ * <p>
+ * Lives with the benchmarks, so the plugin jar doesn't ship it. Run it from the benchmarks jar, which has the plugin and the Paper API in it:
+ * {@code java -cp benchmarks/target/benchmarks.jar me.stavgordeev.plugin.Headless.HeadlessMatch [ticks] [games]}
+ */
+public final class HeadlessMatch {
+    // How long the arenas may take to be restored once the games end, before the run counts as failed.
+    private static final int MAX_CLEANUP_TICKS = 20 * 60;
+
+    private HeadlessMatch() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long ticks = args.length > 0 ? Long.parseLong(args[0]) : 20 * 60 * 60; // An hour of game time
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        File journalsFolder = Files.createTempDirectory("minigame-journals").toFile();
+        HeadlessServer server = new HeadlessServer(games, journalsFolder);
+        Result result = run(server, ticks, games);
+
+        System.out.printf(Locale.ROOT, "%d games, %d ticks in %.2fs (%.0f ticks/s)%n", games, result.ticks(), result.nanos() / 1e9, result.ticks() / (result.nanos() / 1e9));
+        BlockWriteQueue.Stats stats = server.getBlockWriteQueue().getStats();
+        System.out.printf(Locale.ROOT, "%d block writes applied, %d coalesced%n", stats.totalApplied(), stats.totalCoalesced());
+        System.out.printf(Locale.ROOT, "Arenas restored after %d ticks, %d blocks left in the world%n", result.cleanupTicks(), server.getWorld().countNonAirBlocks());
+        if (result.cleanupTicks() < 0) System.exit(1);
+    }
+
+    /**
+     * Starts a number of DiscoMayhem games, each in its own arena with one headless player, runs the server for a number of ticks,
+     * then ends the games and runs until every arena is released.
+     * @return How long it took, and how many ticks the cleanup took (-1 if the arenas weren't released in time)
+     */
+    public static Result run(HeadlessServer server, long ticks, int games) throws InterruptedException {
+        List<DiscoMayhem> runningGames = new ArrayList<>();
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < games; i++) {
+            Arena arena = server.getArenaAllocator().allocate();
+            if (arena == null) throw new IllegalStateException("The server has room for " + i + " games only");
+
+            DiscoMayhem game = new DiscoMayhem(server, arena);
+            Player player = HeadlessPlayers.create("player" + i);
+            game.start(player);
+            runningGames.add(game);
+            players.add(player);
+        }
+
+        long start = System.nanoTime();
+        server.runTicks(ticks);
+        long nanos = System.nanoTime() - start;
+
+        for (int i = 0; i < games; i++) {
+            runningGames.get(i).endGame(players.get(i));
+        }
+        int cleanupTicks = 0;
+        while (server.getArenaAllocator().getArenasInUse() > 0) {
+            if (cleanupTicks == MAX_CLEANUP_TICKS) return new Result(ticks, nanos, -1);
+            server.tick();
+            cleanupTicks++;
+        }
+        return new Result(ticks, nanos, cleanupTicks);
+    }
+
+    /**
+     * @param ticks How many ticks the games ran
+     * @param nanos How long those ticks took
+     * @param cleanupTicks How many ticks it took to restore the arenas once the games ended, or -1 if they weren't restored in time
+     */
+    public record Result(long ticks, long nanos, int cleanupTicks) {
+    }
+}
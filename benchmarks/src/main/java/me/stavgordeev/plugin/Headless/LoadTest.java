@@ -0,0 +1,214 @@
+package me.stavgordeev.plugin.Headless;
+
+import me.stavgordeev.plugin.Arenas.Arena;
+import me.stavgordeev.plugin.Metrics.Histogram;
+import me.stavgordeev.plugin.Minigames.DiscoMayhem;
+import me.stavgordeev.plugin.Minigames.MinigameSkeleton;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A load test for DiscoMayhem: many arenas run at once on a {@link HeadlessServer}, each with a lobby of {@link SimulatedPlayer}s
+ * that walk, jump and fall off the floor, and join again a little after they died. Once every player of a game is dead the game ends,
+ * and the next player to join starts a new one once the arena is free again.
+ * <p>
+ * Only the server's ticks are timed, the simulated players are moved in between. The results are written to a JSON file,
+ * so runs of different builds can be compared.
+ * <p>
+ * Run it from the benchmarks jar, which has the plugin and the Paper API in it:
+ * {@code java -cp benchmarks/target/benchmarks.jar me.stavgordeev.plugin.Headless.LoadTest [arenas=8] [players=50] [ticks=12000] [warmup=200] [seed=1] [out=load-test-<time>.json]}
+ * where players is the amount of players per arena.
+ */
+public final class LoadTest {
+    private static final int REJOIN_DELAY_TICKS = 60;
+
+    private final HeadlessServer server;
+    private final List<Lobby> lobbies = new ArrayList<>();
+
+    // What is recorded after the warmup
+    private final Histogram tickNanos = new Histogram();
+    private final Histogram blockWritesPerTick = new Histogram();
+    private final Histogram pendingEvents = new Histogram();
+    private final Histogram repeatingTasks = new Histogram();
+    private final Histogram allocatedBytesPerTick = new Histogram();
+    private long joins, deaths, gamesStarted, maxParticipants;
+
+    private LoadTest(HeadlessServer server, int arenas, int playersPerArena, Random random) {
+        this.server = server;
+        for (int i = 0; i < arenas; i++) {
+            Lobby lobby = new Lobby();
+            for (int j = 0; j < playersPerArena; j++) {
+                lobby.players.add(new SimulatedPlayer(HeadlessPlayers.create("player" + i + "_" + j), random));
+            }
+            lobbies.add(lobby);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) throw new IllegalArgumentException("Arguments are key=value, got " + arg);
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        int arenas = Integer.parseInt(options.getOrDefault("arenas", "8"));
+        int playersPerArena = Integer.parseInt(options.getOrDefault("players", "50"));
+        int ticks = Integer.parseInt(options.getOrDefault("ticks", "12000")); // Ten minutes of game time
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "200"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        File out = new File(options.getOrDefault("out", "load-test-" + System.currentTimeMillis() + ".json"));
+
+        File journalsFolder = Files.createTempDirectory("minigame-journals").toFile();
+        HeadlessServer server = new HeadlessServer(arenas, journalsFolder);
+        LoadTest loadTest = new LoadTest(server, arenas, playersPerArena, new Random(seed));
+
+        for (int tick = 0; tick < warmup; tick++) {
+            loadTest.tick(false);
+        }
+        GcTotals gcBefore = GcTotals.now();
+        long start = System.nanoTime();
+        for (int tick = 0; tick < ticks; tick++) {
+            loadTest.tick(true);
+        }
+        long wallNanos = System.nanoTime() - start;
+        GcTotals gc = GcTotals.now().minus(gcBefore);
+
+        String json = loadTest.toJson(arenas, playersPerArena, ticks, warmup, seed, wallNanos, gc);
+        File temporary = new File(out.getAbsoluteFile().getParentFile(), out.getName() + ".tmp");
+        Files.writeString(temporary.toPath(), json);
+        Files.move(temporary.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        System.out.printf(Locale.ROOT, "%d arenas, %d players each, %d ticks in %.2fs (%.0f ticks/s)%n",
+                arenas, playersPerArena, ticks, wallNanos / 1e9, ticks / (wallNanos / 1e9));
+        System.out.printf(Locale.ROOT, "Tick time p50 %.3fms, p99 %.3fms, max %.3fms%n",
+                loadTest.tickNanos.valueAtQuantile(0.5) / 1e6, loadTest.tickNanos.valueAtQuantile(0.99) / 1e6, loadTest.tickNanos.getMax() / 1e6);
+        System.out.println("Results written to " + out.getAbsolutePath());
+    }
+
+    /**
+     * Runs one server tick, then lets the players move, die and join.
+     * @param record Whether the tick counts towards the results
+     */
+    private void tick(boolean record) throws InterruptedException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long appliedBefore = server.getBlockWriteQueue().getStats().totalApplied();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        server.tick();
+        long nanos = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        long applied = server.getBlockWriteQueue().getStats().totalApplied() - appliedBefore;
+
+        int events = 0;
+        for (Lobby lobby : lobbies) {
+            lobby.tick(record);
+            if (lobby.game != null && lobby.game.isGameRunning()) events += lobby.game.getPendingEventCount();
+        }
+
+        if (!record) return;
+        tickNanos.record(nanos);
+        allocatedBytesPerTick.record(allocated);
+        blockWritesPerTick.record(applied);
+        pendingEvents.record(events);
+        repeatingTasks.record(server.getVirtualClock().getRepeatingTaskCount());
+    }
+
+    /**
+     * The players of one arena, and the game they play in. A lobby only ever has one game at a time.
+     */
+    private final class Lobby {
+        private final List<SimulatedPlayer> players = new ArrayList<>();
+        private MinigameSkeleton game;
+
+        void tick(boolean record) throws InterruptedException {
+            for (SimulatedPlayer player : players) {
+                if (player.getGame() != null) {
+                    if (!player.getGame().isGameRunning()) {
+                        player.leave(REJOIN_DELAY_TICKS); // The game ended without it
+                    } else if (player.tick(server.getWorld())) {
+                        // The game puts the player back where it came from first, then the player is left where it died.
+                        game.removePlayer(player.getPlayer());
+                        player.leave(REJOIN_DELAY_TICKS);
+                        if (record) deaths++;
+                    }
+                } else if (player.wantsToRejoin() && join(player.getPlayer(), record)) {
+                    player.enter(game);
+                }
+            }
+            if (record && game != null && game.isGameRunning()) maxParticipants = Math.max(maxParticipants, game.getParticipants().size());
+        }
+
+        /**
+         * Puts a player in the lobby's game, or starts a new game with it if none is running.
+         * @return Whether the player joined. Starting a game fails while the arenas of ended games are still being restored.
+         */
+        private boolean join(Player player, boolean record) throws InterruptedException {
+            if (game != null && game.isGameRunning()) {
+                if (!game.addPlayer(player)) return false;
+                game.prepareGameSetting(player);
+            } else {
+                Arena arena = server.getArenaAllocator().allocate();
+                if (arena == null) return false;
+                game = new DiscoMayhem(server, arena);
+                game.start(player);
+                if (record) gamesStarted++;
+            }
+            if (record) joins++;
+            return true;
+        }
+    }
+
+    private String toJson(int arenas, int playersPerArena, int ticks, int warmup, long seed, long wallNanos, GcTotals gc) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"timestamp\": \"").append(Instant.now()).append("\",\n");
+        json.append("  \"javaVersion\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append(String.format(Locale.ROOT, "  \"config\": {\"arenas\": %d, \"playersPerArena\": %d, \"ticks\": %d, \"warmupTicks\": %d, \"seed\": %d},%n",
+                arenas, playersPerArena, ticks, warmup, seed));
+        json.append(String.format(Locale.ROOT, "  \"wallSeconds\": %.3f,%n", wallNanos / 1e9));
+        json.append(String.format(Locale.ROOT, "  \"ticksPerSecond\": %.1f,%n", ticks / (wallNanos / 1e9)));
+        json.append("  \"tickTimeMs\": ").append(summary(tickNanos, 1e-6)).append(",\n");
+        json.append("  \"blockWritesPerTick\": ").append(summary(blockWritesPerTick, 1)).append(",\n");
+        json.append("  \"pendingGameEvents\": ").append(summary(pendingEvents, 1)).append(",\n");
+        json.append("  \"repeatingTasks\": ").append(summary(repeatingTasks, 1)).append(",\n");
+        json.append("  \"allocatedBytesPerTick\": ").append(summary(allocatedBytesPerTick, 1)).append(",\n");
+        json.append(String.format(Locale.ROOT, "  \"gc\": {\"collections\": %d, \"pauseMs\": %d},%n", gc.collections, gc.millis));
+        json.append(String.format(Locale.ROOT, "  \"players\": {\"joins\": %d, \"deaths\": %d, \"gamesStarted\": %d, \"maxParticipants\": %d}%n",
+                joins, deaths, gamesStarted, maxParticipants));
+        return json.append("}\n").toString();
+    }
+
+    private static String summary(Histogram histogram, double scale) {
+        double mean = histogram.getCount() == 0 ? 0 : (double) histogram.getSum() / histogram.getCount();
+        return String.format(Locale.ROOT, "{\"mean\": %.3f, \"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"p999\": %.3f, \"max\": %.3f}",
+                mean * scale, histogram.valueAtQuantile(0.5) * scale, histogram.valueAtQuantile(0.9) * scale,
+                histogram.valueAtQuantile(0.99) * scale, histogram.valueAtQuantile(0.999) * scale, histogram.getMax() * scale);
+    }
+
+    private record GcTotals(long collections, long millis) {
+        static GcTotals now() {
+            long collections = 0, millis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collections += Math.max(0, collector.getCollectionCount());
+                millis += Math.max(0, collector.getCollectionTime());
+            }
+            return new GcTotals(collections, millis);
+        }
+
+        GcTotals minus(GcTotals other) {
+            return new GcTotals(collections - other.collections, millis - other.millis);
+        }
+    }
+}
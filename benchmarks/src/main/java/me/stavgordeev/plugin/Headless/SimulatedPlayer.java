@@ -0,0 +1,170 @@
+package me.stavgordeev.plugin.Headless;
+
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Minigames.MinigameSkeleton;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.Random;
+
+/**
+ * A headless player that moves on its own, for load tests. It walks towards blocks it can stand on, jumps now and then,
+ * falls when there's nothing under it, and counts as dead once it has fallen far enough.
+ * <p>
+ * The movement is a rough take on vanilla's (walking speed, gravity and drag per tick), and only the block under the player's feet is checked.
+ * It reads the world the way a client sees it, so it only sees blocks once the block write queue applied them.
+ */
+final class SimulatedPlayer {
+    private static final double WALK_SPEED = 0.216; // Blocks per tick
+    private static final double GRAVITY = 0.08;
+    private static final double DRAG = 0.98;
+    private static final double JUMP_VELOCITY = 0.42;
+    private static final double JUMP_CHANCE = 0.02; // Per tick, while standing
+    private static final double DEATH_FALL_DISTANCE = 12; // Falling further than this means there's no floor left below.
+    private static final int TICKS_BETWEEN_TARGETS = 20;
+    private static final int TARGET_SEARCH_RADIUS = 12;
+    private static final int TARGET_SEARCH_ATTEMPTS = 16;
+
+    private final Player player;
+    private final Random random;
+    private MinigameSkeleton game;
+    private boolean placed; // Whether the game teleported the player into its arena yet
+    private double x = Double.NaN, y = Double.NaN, z = Double.NaN;
+    private double velocityY;
+    private double fallDistance;
+    private double targetX, targetZ;
+    private int ticksUntilNewTarget;
+    private int ticksUntilRejoin;
+
+    SimulatedPlayer(Player player, Random random) {
+        this.player = player;
+        this.random = random;
+    }
+
+    /**
+     * Puts the player in a game. It starts moving once the game teleported it, which may be a few ticks later if the arena isn't ready yet.
+     */
+    void enter(MinigameSkeleton game) {
+        this.game = game;
+        placed = false;
+    }
+
+    /**
+     * Takes the player out of its game. It wants back in after a while.
+     * @param rejoinDelay In how many ticks the player wants to join again
+     */
+    void leave(int rejoinDelay) {
+        // Leave the player where it ended up, so the teleport of the next game it joins can be told apart from where it is.
+        Location location = placed ? player.getLocation() : null;
+        if (location != null) player.teleport(new Location(location.getWorld(), x, y, z));
+        game = null;
+        placed = false;
+        ticksUntilRejoin = rejoinDelay;
+    }
+
+    /**
+     * Moves the player one tick. Does nothing until the game teleported the player.
+     * @return Whether the player fell to its death on this tick
+     */
+    boolean tick(HeadlessWorld world) {
+        if (!placed && !place()) return false;
+        if (--ticksUntilNewTarget <= 0) pickTarget(world);
+
+        // Walk towards the target.
+        double dx = targetX - x, dz = targetZ - z;
+        double distance = Math.sqrt(dx * dx + dz * dz);
+        if (distance > WALK_SPEED) {
+            x += dx / distance * WALK_SPEED;
+            z += dz / distance * WALK_SPEED;
+        }
+
+        if (velocityY <= 0 && isSolid(world, x, y - 0.001, z)) {
+            fallDistance = 0;
+            if (random.nextDouble() >= JUMP_CHANCE) {
+                velocityY = 0;
+                return false;
+            }
+            velocityY = JUMP_VELOCITY;
+        }
+
+        // Fall, but land on the first block the fall would go through.
+        double nextY = y + velocityY;
+        if (velocityY < 0) {
+            for (int blockY = (int) Math.floor(y) - 1; blockY >= Math.floor(nextY); blockY--) {
+                if (isSolid(world, x, blockY, z)) {
+                    fallDistance += y - (blockY + 1);
+                    y = blockY + 1;
+                    velocityY = 0;
+                    return fallDistance > DEATH_FALL_DISTANCE;
+                }
+            }
+            fallDistance -= velocityY;
+        }
+        y = nextY;
+        velocityY = (velocityY - GRAVITY) * DRAG;
+
+        return fallDistance > DEATH_FALL_DISTANCE;
+    }
+
+    /**
+     * Starts the player where the game teleported it, if it did.
+     * @return Whether the player was teleported
+     */
+    private boolean place() {
+        Location location = player.getLocation();
+        if (location == null || (location.getX() == x && location.getY() == y && location.getZ() == z)) return false;
+
+        x = location.getX();
+        y = location.getY();
+        z = location.getZ();
+        velocityY = 0;
+        fallDistance = 0;
+        targetX = x;
+        targetZ = z;
+        ticksUntilNewTarget = 0;
+        placed = true;
+        return true;
+    }
+
+    /**
+     * Looks for a block to stand on around the player, at its height or a little below. Walks in a random direction if none is found.
+     */
+    private void pickTarget(HeadlessWorld world) {
+        ticksUntilNewTarget = TICKS_BETWEEN_TARGETS;
+        for (int attempt = 0; attempt < TARGET_SEARCH_ATTEMPTS; attempt++) {
+            int candidateX = (int) Math.floor(x) + random.nextInt(-TARGET_SEARCH_RADIUS, TARGET_SEARCH_RADIUS + 1);
+            int candidateZ = (int) Math.floor(z) + random.nextInt(-TARGET_SEARCH_RADIUS, TARGET_SEARCH_RADIUS + 1);
+            for (int candidateY = (int) Math.floor(y) - 1; candidateY >= (int) Math.floor(y) - 5; candidateY--) {
+                if (world.getBlockState(candidateX, candidateY, candidateZ) != BlockPalette.AIR) {
+                    targetX = candidateX + 0.5;
+                    targetZ = candidateZ + 0.5;
+                    return;
+                }
+            }
+        }
+
+        double angle = random.nextDouble() * 2 * Math.PI;
+        targetX = x + Math.cos(angle) * TARGET_SEARCH_RADIUS;
+        targetZ = z + Math.sin(angle) * TARGET_SEARCH_RADIUS;
+    }
+
+    private static boolean isSolid(HeadlessWorld world, double x, double y, double z) {
+        return world.getBlockState((int) Math.floor(x), (int) Math.floor(y), (int) Math.floor(z)) != BlockPalette.AIR;
+    }
+
+    /**
+     * Counts down until the player wants to join again.
+     * @return Whether the player wants to join now
+     */
+    boolean wantsToRejoin() {
+        return ticksUntilRejoin <= 0 || --ticksUntilRejoin <= 0;
+    }
+
+    Player getPlayer() {
+        return player;
+    }
+
+    MinigameSkeleton getGame() {
+        return game;
+    }
+}
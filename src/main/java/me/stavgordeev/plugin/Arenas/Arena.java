@@ -0,0 +1,95 @@
+package me.stavgordeev.plugin.Arenas;
+
+import me.stavgordeev.plugin.Platform.GameWorld;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.util.Vector;
+
+/**
+ * A part of the game world that belongs to one game while it runs. Games place everything relative to the arena's origin,
+ * so the same game can run in any arena, next to other games.
+ * <p>
+ * Arenas are handed out by an {@link ArenaAllocator}, and have to be released once the game cleaned them up, so the slot can be reused.
+ */
+public final class Arena {
+    private final ArenaAllocator allocator;
+    private final int slot;
+    private final GameWorld gameWorld;
+    private final World world; // Null when the game runs headless. Locations then have no world, which is fine for the coordinates.
+    private final int originX, originY, originZ;
+    private boolean released;
+
+    Arena(ArenaAllocator allocator, int slot, GameWorld gameWorld, int originX, int originY, int originZ) {
+        this.allocator = allocator;
+        this.slot = slot;
+        this.gameWorld = gameWorld;
+        this.world = gameWorld.getBukkitWorld();
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+    }
+
+    /**
+     * @return The center of the arena
+     */
+    public Location getOrigin() {
+        return new Location(world, originX, originY, originZ);
+    }
+
+    /**
+     * @return The location at an offset from the arena's origin
+     */
+    public Location at(double xOffset, double yOffset, double zOffset) {
+        return new Location(world, originX + xOffset, originY + yOffset, originZ + zOffset);
+    }
+
+    /**
+     * @return The location at an offset from the arena's origin. The offset isn't changed.
+     */
+    public Location at(Vector offset) {
+        return at(offset.getX(), offset.getY(), offset.getZ());
+    }
+
+    /**
+     * Hands the arena back to its allocator. Must only be called once the arena is clean, since the next game gets it as it is.
+     * Releasing an arena more than once does nothing.
+     */
+    public void release() {
+        if (released) return;
+        released = true;
+        allocator.release(slot);
+    }
+
+    /**
+     * @return The index of the arena in the allocator's grid. Unique among the arenas that are in use.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * @return The Bukkit world of the arena, or null if the game runs headless
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * @return The world of the arena, whether it's a Bukkit world or not
+     */
+    public GameWorld getGameWorld() {
+        return gameWorld;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public int getOriginZ() {
+        return originZ;
+    }
+}
@@ -0,0 +1,80 @@
+package me.stavgordeev.plugin.Arenas;
+
+import me.stavgordeev.plugin.Platform.GameWorld;
+
+import java.util.BitSet;
+
+/**
+ * Hands out arenas on a grid in the game world, so many games can run at the same time without getting in each other's way.
+ * <p>
+ * Slot n of the grid is at row n / columns and column n % columns. The lowest free slot is always handed out first,
+ * so the games stay close to the grid's origin, and a slot is free again as soon as its arena is released.
+ * <p>
+ * Must only be used from the main thread.
+ */
+public class ArenaAllocator {
+    private final GameWorld world;
+    private final int originX, originY, originZ;
+    private final int spacing;
+    private final int columns;
+    private final int maxArenas;
+    private final BitSet usedSlots = new BitSet();
+
+    /**
+     * @param world The world the arenas are in
+     * @param originX The x coordinate of the origin of the first arena
+     * @param originY The y coordinate of the origin of every arena
+     * @param originZ The z coordinate of the origin of the first arena
+     * @param spacing The distance between the origins of two neighbouring arenas. Has to be more than twice the radius of the largest game area.
+     * @param columns How many arenas are in one row of the grid
+     * @param maxArenas How many arenas can be in use at the same time
+     */
+    public ArenaAllocator(GameWorld world, int originX, int originY, int originZ, int spacing, int columns, int maxArenas) {
+        if (spacing <= 0 || columns <= 0 || maxArenas <= 0) {
+            throw new IllegalArgumentException("Arena spacing, columns and max arenas must be positive");
+        }
+        this.world = world;
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.spacing = spacing;
+        this.columns = columns;
+        this.maxArenas = maxArenas;
+    }
+
+    /**
+     * Takes the lowest free slot of the grid.
+     * @return The arena of the slot, or null if every arena is in use
+     */
+    public Arena allocate() {
+        int slot = usedSlots.nextClearBit(0);
+        if (slot >= maxArenas) return null;
+
+        usedSlots.set(slot);
+        return new Arena(this, slot, world,
+                originX + (slot % columns) * spacing, originY, originZ + (slot / columns) * spacing);
+    }
+
+    void release(int slot) {
+        usedSlots.clear(slot);
+    }
+
+    /**
+     * @return How many arenas are in use right now
+     */
+    public int getArenasInUse() {
+        return usedSlots.cardinality();
+    }
+
+    public int getMaxArenas() {
+        return maxArenas;
+    }
+
+    public int getSpacing() {
+        return spacing;
+    }
+
+    public GameWorld getWorld() {
+        return world;
+    }
+}
@@ -0,0 +1,107 @@
+package me.stavgordeev.plugin.Arenas;
+
+import me.stavgordeev.plugin.DataStructures.LongIntHashMap;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.Arrays;
+
+/**
+ * Finds what owns the arena a position is in, with one hash lookup by chunk, however many arenas are in use.
+ * <p>
+ * Every arena owns the square of chunks around its origin that is as wide as the spacing of the grid, so neighbouring arenas don't overlap
+ * as long as the spacing is a multiple of 16. Main thread only.
+ *
+ * @param <T> What owns an arena, usually the game that runs in it
+ */
+public final class ArenaRegionIndex<T> {
+    private static final int MISSING = -1;
+
+    private final int spacing;
+    private final LongIntHashMap slotsByChunk = new LongIntHashMap(256, MISSING);
+    private Arena[] arenasBySlot = new Arena[16];
+    private Object[] ownersBySlot = new Object[16];
+    private int size;
+
+    /**
+     * @param spacing The distance between the origins of two neighbouring arenas (see {@link ArenaAllocator#getSpacing()})
+     */
+    public ArenaRegionIndex(int spacing) {
+        this.spacing = spacing;
+    }
+
+    /**
+     * Adds an arena to the index. An arena that is already in it gets the new owner.
+     */
+    public void put(Arena arena, T owner) {
+        int slot = arena.getSlot();
+        if (slot >= arenasBySlot.length) {
+            int length = Math.max(slot + 1, arenasBySlot.length << 1);
+            arenasBySlot = Arrays.copyOf(arenasBySlot, length);
+            ownersBySlot = Arrays.copyOf(ownersBySlot, length);
+        }
+        if (arenasBySlot[slot] == null) size++;
+        arenasBySlot[slot] = arena;
+        ownersBySlot[slot] = owner;
+
+        for (int chunkX = minChunk(arena.getOriginX()); chunkX <= maxChunk(arena.getOriginX()); chunkX++) {
+            for (int chunkZ = minChunk(arena.getOriginZ()); chunkZ <= maxChunk(arena.getOriginZ()); chunkZ++) {
+                slotsByChunk.put(chunkKey(chunkX, chunkZ), slot);
+            }
+        }
+    }
+
+    /**
+     * Removes an arena from the index. Removing an arena that isn't in it does nothing.
+     */
+    public void remove(Arena arena) {
+        int slot = arena.getSlot();
+        if (slot >= arenasBySlot.length || arenasBySlot[slot] != arena) return;
+        arenasBySlot[slot] = null;
+        ownersBySlot[slot] = null;
+        size--;
+
+        for (int chunkX = minChunk(arena.getOriginX()); chunkX <= maxChunk(arena.getOriginX()); chunkX++) {
+            for (int chunkZ = minChunk(arena.getOriginZ()); chunkZ <= maxChunk(arena.getOriginZ()); chunkZ++) {
+                long key = chunkKey(chunkX, chunkZ);
+                if (slotsByChunk.get(key) == slot) slotsByChunk.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return The owner of the arena a block is in, or null if it isn't in any arena of the index
+     */
+    @SuppressWarnings("unchecked")
+    public T ownerAt(World world, int blockX, int blockZ) {
+        int slot = slotsByChunk.get(chunkKey(blockX >> 4, blockZ >> 4));
+        if (slot == MISSING || arenasBySlot[slot].getWorld() != world) return null;
+        return (T) ownersBySlot[slot];
+    }
+
+    /**
+     * @return The owner of the arena a location is in, or null if it isn't in any arena of the index
+     */
+    public T ownerAt(Location location) {
+        return ownerAt(location.getWorld(), location.getBlockX(), location.getBlockZ());
+    }
+
+    /**
+     * @return How many arenas are in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    private int minChunk(int origin) {
+        return (origin - spacing / 2) >> 4;
+    }
+
+    private int maxChunk(int origin) {
+        return (origin + spacing / 2 - 1) >> 4;
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,128 @@
+package me.stavgordeev.plugin.Blocks;
+
+import me.stavgordeev.plugin.DataStructures.BlockPos;
+import me.stavgordeev.plugin.DataStructures.LongArrayList;
+import me.stavgordeev.plugin.MinigamePlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Clears cuboid areas one chunk section at a time instead of one block at a time.
+ * <p>
+ * The chunks covering the area are snapshotted on the main thread, the snapshots are scanned on an async thread,
+ * and sections that are already all air are skipped without looking at a single block. Only the positions that
+ * actually hold a block are handed back to the main thread, where they are queued as air in the block write queue.
+ */
+public final class AreaClearer {
+    private static final int SECTION_SIZE = 16;
+
+    private AreaClearer() {
+    }
+
+    /**
+     * Clears every block in a cube around a center location.
+     * @param center The center of the cube
+     * @param radius The radius of the cube. The side length of the cube is 2*radius+1
+     * @return A future that completes on the main thread with the amount of blocks that were cleared
+     */
+    public static CompletableFuture<Integer> clearCube(Location center, int radius) {
+        int x = center.getBlockX(), y = center.getBlockY(), z = center.getBlockZ();
+        return clear(center.getWorld(), x - radius, y - radius, z - radius, x + radius, y + radius, z + radius);
+    }
+
+    /**
+     * Clears every block in a cuboid. The bounds are inclusive, and the y bounds are clamped to the world height.
+     * @param world The world to clear the area in
+     * @return A future that completes on the main thread with the amount of blocks that were cleared
+     */
+    public static CompletableFuture<Integer> clear(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int worldMinY = world.getMinHeight();
+        Bounds bounds = new Bounds(minX, Math.max(minY, worldMinY), minZ, maxX, Math.min(maxY, world.getMaxHeight() - 1), maxZ, worldMinY);
+        if (bounds.minY > bounds.maxY) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        // Snapshot every chunk that intersects the area. Paper completes these futures on the main thread, which is where snapshots have to be taken.
+        List<CompletableFuture<ChunkSnapshot>> snapshotFutures = new ArrayList<>();
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                snapshotFutures.add(world.getChunkAtAsync(chunkX, chunkZ)
+                        .thenApply(chunk -> chunk.getChunkSnapshot(false, false, false)));
+            }
+        }
+
+        Executor async = task -> Bukkit.getScheduler().runTaskAsynchronously(MinigamePlugin.plugin, task);
+        Executor mainThread = task -> Bukkit.getScheduler().runTask(MinigamePlugin.plugin, task);
+
+        return CompletableFuture.allOf(snapshotFutures.toArray(new CompletableFuture[0]))
+                .thenApplyAsync(ignored -> {
+                    LongArrayList positionsToClear = new LongArrayList(1024);
+                    for (CompletableFuture<ChunkSnapshot> snapshotFuture : snapshotFutures) {
+                        scanSnapshot(snapshotFuture.join(), bounds, positionsToClear);
+                    }
+                    return positionsToClear;
+                }, async)
+                .thenComposeAsync(positionsToClear -> {
+                    BlockWriteQueue blockWriteQueue = MinigamePlugin.getBlockWriteQueue();
+                    queueClear(blockWriteQueue, blockWriteQueue.sinkFor(world), positionsToClear,
+                            bounds.minX, bounds.minY, bounds.minZ, bounds.maxX, bounds.maxY, bounds.maxZ);
+                    return blockWriteQueue.barrier().thenApply(ignored -> positionsToClear.size());
+                }, mainThread)
+                .whenComplete((blocksCleared, error) -> {
+                    if (error != null) Bukkit.getLogger().severe("Failed to clear area: " + error.getMessage());
+                });
+    }
+
+    /**
+     * Queues air at every position that was found to hold a block, and turns the writes that are still pending in the area into air.
+     * This is the part of a clear that runs on the main thread. The bounds are inclusive.
+     * @param blockWriteQueue The queue to write through
+     * @param sink The sink of the area's world
+     * @param positionsToClear The packed positions that hold a block (see {@link BlockPos})
+     */
+    public static void queueClear(BlockWriteQueue blockWriteQueue, BlockSink sink, LongArrayList positionsToClear,
+                                  int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        for (int i = 0; i < positionsToClear.size(); i++) {
+            long packed = positionsToClear.get(i);
+            blockWriteQueue.setBlock(sink, BlockPos.unpackX(packed), BlockPos.unpackY(packed), BlockPos.unpackZ(packed), BlockPalette.AIR, WritePriority.COSMETIC);
+        }
+        // Writes that were still queued when the snapshots were taken would land after the clearing, so they are turned into air as well.
+        blockWriteQueue.replacePendingWithin(sink, minX, minY, minZ, maxX, maxY, maxZ, BlockPalette.AIR, WritePriority.COSMETIC);
+    }
+
+    /**
+     * Collects every non-air position of a chunk snapshot that is inside the bounds. Sections that are empty are skipped entirely.
+     * Runs off the main thread.
+     */
+    private static void scanSnapshot(ChunkSnapshot snapshot, Bounds bounds, LongArrayList out) {
+        int chunkMinX = snapshot.getX() << 4, chunkMinZ = snapshot.getZ() << 4;
+        int localMinX = Math.max(bounds.minX - chunkMinX, 0), localMaxX = Math.min(bounds.maxX - chunkMinX, SECTION_SIZE - 1);
+        int localMinZ = Math.max(bounds.minZ - chunkMinZ, 0), localMaxZ = Math.min(bounds.maxZ - chunkMinZ, SECTION_SIZE - 1);
+
+        for (int sectionY = bounds.minY >> 4; sectionY <= bounds.maxY >> 4; sectionY++) {
+            // Snapshot sections are indexed from the bottom of the world, not from y=0.
+            if (snapshot.isSectionEmpty(sectionY - (bounds.worldMinY >> 4))) continue;
+
+            int fromY = Math.max(bounds.minY, sectionY << 4), toY = Math.min(bounds.maxY, (sectionY << 4) + SECTION_SIZE - 1);
+            for (int y = fromY; y <= toY; y++) {
+                for (int x = localMinX; x <= localMaxX; x++) {
+                    for (int z = localMinZ; z <= localMaxZ; z++) {
+                        if (!snapshot.getBlockType(x, y, z).isAir()) {
+                            out.add(BlockPos.pack(chunkMinX + x, y, chunkMinZ + z));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private record Bounds(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int worldMinY) {
+    }
+}
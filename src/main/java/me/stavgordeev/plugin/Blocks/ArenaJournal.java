@@ -0,0 +1,257 @@
+package me.stavgordeev.plugin.Blocks;
+
+import me.stavgordeev.plugin.DataStructures.BlockPos;
+import me.stavgordeev.plugin.DataStructures.LongIntHashMap;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the original state of every block a game writes, so the arena can be put back exactly as it was
+ * by rewriting only those positions, instead of clearing the whole area around it.
+ * <p>
+ * Positions are kept as packed longs mapped to palette ids of their original states. Only the first write to a position is recorded,
+ * since that is the one that holds the state from before the game.
+ * The journal is written to a file every now and then, so if the server crashes mid-game the arena can be restored on the next start
+ * (see {@link #recoverAll(File, BlockWriteQueue, Logger)}).
+ * <p>
+ * Must only be used from the main thread, except for the file writing which is done on a copy.
+ */
+public class ArenaJournal implements BlockWriter {
+    private static final int FILE_MAGIC = 0x4A524E4C; // "JRNL"
+    private static final int FILE_VERSION = 1;
+    private static final int MISSING = -1;
+    private static final Set<ArenaJournal> OPEN_JOURNALS = ConcurrentHashMap.newKeySet();
+
+    private final BlockWriteQueue blockWriteQueue;
+    private final BlockSink sink;
+    private final String worldName;
+    private final File file;
+    private final Logger logger;
+    private final LongIntHashMap originalStates = new LongIntHashMap(1024, MISSING);
+    private boolean dirty;
+    private volatile boolean closed;
+    private LongAdder writeCounter; // Counts the writes that go through the journal, for the metrics. May be null.
+
+    /**
+     * @param blockWriteQueue The queue the writes go to
+     * @param world The world of the arena
+     * @param file The file the journal is saved to
+     * @param logger Where to report files that can't be saved or deleted
+     */
+    public ArenaJournal(BlockWriteQueue blockWriteQueue, World world, File file, Logger logger) {
+        this(blockWriteQueue, blockWriteQueue.sinkFor(world), world.getName(), file, logger);
+    }
+
+    public ArenaJournal(BlockWriteQueue blockWriteQueue, BlockSink sink, String worldName, File file, Logger logger) {
+        this.blockWriteQueue = blockWriteQueue;
+        this.sink = sink;
+        this.worldName = worldName;
+        this.file = file;
+        this.logger = logger;
+        OPEN_JOURNALS.add(this);
+    }
+
+    /**
+     * Records the original state of the position if it wasn't touched before, then queues the write.
+     */
+    @Override
+    public void setBlock(int x, int y, int z, int stateId, WritePriority priority) {
+        long packed = BlockPos.pack(x, y, z);
+        if (!originalStates.containsKey(packed)) {
+            originalStates.put(packed, blockWriteQueue.getEffectiveState(sink, x, y, z));
+            dirty = true;
+        }
+        blockWriteQueue.setBlock(sink, x, y, z, stateId, priority);
+        if (writeCounter != null) writeCounter.increment();
+    }
+
+    /**
+     * @param writeCounter A counter to add every write that goes through the journal to, or null to stop counting
+     */
+    public void countWritesIn(LongAdder writeCounter) {
+        this.writeCounter = writeCounter;
+    }
+
+    /**
+     * @return How many positions the journal holds
+     */
+    public int size() {
+        return originalStates.size();
+    }
+
+    /**
+     * Queues the original state of every recorded position and empties the journal. The journal's file is deleted once the writes are applied.
+     * @return A future that completes once the arena is restored
+     */
+    public CompletableFuture<Void> restore() {
+        originalStates.forEach((packed, stateId) -> blockWriteQueue.setBlock(sink,
+                BlockPos.unpackX(packed), BlockPos.unpackY(packed), BlockPos.unpackZ(packed), stateId, WritePriority.COSMETIC));
+        originalStates.clear();
+        dirty = false;
+        closed = true;
+        OPEN_JOURNALS.remove(this);
+
+        return blockWriteQueue.barrier().thenRun(() -> {
+            synchronized (this) {
+                if (file.exists() && !file.delete()) logger.warning("Could not delete arena journal " + file.getName());
+            }
+        });
+    }
+
+    /**
+     * Saves the journal to its file on an async thread, if anything changed since the last save.
+     * @param async Runs the file writing off the main thread, like {@link me.stavgordeev.plugin.Platform.GameClock#runAsync(Runnable)}
+     */
+    public void saveAsync(Executor async) {
+        if (!dirty) return;
+        Snapshot snapshot = snapshot();
+        dirty = false;
+        async.execute(() -> write(snapshot));
+    }
+
+    /**
+     * Saves the journal to its file right away. Used when the plugin shuts down.
+     */
+    public void saveNow() {
+        if (!dirty) return;
+        write(snapshot());
+        dirty = false;
+    }
+
+    /**
+     * Saves every journal that wasn't restored yet. Called when the plugin is disabled, so the next start can restore the arenas.
+     */
+    public static void saveAllNow() {
+        for (ArenaJournal journal : OPEN_JOURNALS) {
+            journal.saveNow();
+        }
+    }
+
+    /**
+     * Restores every arena that has a journal file left in the folder. Journals are only left behind when a game didn't end properly.
+     * @param folder The folder the journal files are in
+     * @param blockWriteQueue The queue to write the original states with
+     * @param logger Where to report what was restored
+     */
+    public static void recoverAll(File folder, BlockWriteQueue blockWriteQueue, Logger logger) {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(".journal"));
+        if (files == null) return;
+
+        for (File journalFile : files) {
+            try {
+                int restored = recover(journalFile, blockWriteQueue);
+                logger.info("Restored " + restored + " blocks from arena journal " + journalFile.getName());
+                blockWriteQueue.barrier().thenRun(journalFile::delete);
+            } catch (IOException e) {
+                logger.severe("Failed to restore arena journal " + journalFile.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    //------------------------------- Internals --------------------------------//
+
+    /**
+     * A copy of the journal that can be written on another thread.
+     */
+    private record Snapshot(long[] positions, int[] states, String[] stateNames) {
+    }
+
+    private Snapshot snapshot() {
+        long[] positions = new long[originalStates.size()];
+        int[] states = new int[originalStates.size()];
+        Map<Integer, Integer> localIds = new HashMap<>();
+        BlockPalette palette = blockWriteQueue.getPalette();
+
+        int[] index = {0};
+        originalStates.forEach((packed, stateId) -> {
+            positions[index[0]] = packed;
+            states[index[0]] = localIds.computeIfAbsent(stateId, ignored -> localIds.size());
+            index[0]++;
+        });
+
+        // The file gets its own small palette, since global palette ids are different every time the server starts.
+        String[] stateNames = new String[localIds.size()];
+        localIds.forEach((globalId, localId) -> stateNames[localId] = palette.stateOf(globalId));
+        return new Snapshot(positions, states, stateNames);
+    }
+
+    private synchronized void write(Snapshot snapshot) {
+        // A save that was still on its way when the arena got restored must not bring the file back.
+        if (closed) return;
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) parent.mkdirs();
+        File temporary = new File(parent, file.getName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(worldName);
+            out.writeInt(snapshot.stateNames.length);
+            for (String stateName : snapshot.stateNames) {
+                out.writeUTF(stateName);
+            }
+            out.writeInt(snapshot.positions.length);
+            for (int i = 0; i < snapshot.positions.length; i++) {
+                out.writeLong(snapshot.positions[i]);
+                out.writeInt(snapshot.states[i]);
+            }
+        } catch (IOException e) {
+            logger.severe("Failed to save arena journal " + file.getName() + ": " + e.getMessage());
+            return;
+        }
+
+        try {
+            // Replace the old file in one step, so a crash while saving can't leave a half written journal behind.
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.severe("Failed to replace arena journal " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private static int recover(File journalFile, BlockWriteQueue blockWriteQueue) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("not an arena journal, or written by an incompatible version");
+            }
+
+            String worldName = in.readUTF();
+            World world = Bukkit.getWorld(worldName);
+            if (world == null) throw new IOException("world " + worldName + " is not loaded");
+
+            BlockPalette palette = blockWriteQueue.getPalette();
+            int[] globalIds = new int[in.readInt()];
+            for (int i = 0; i < globalIds.length; i++) {
+                globalIds[i] = palette.intern(in.readUTF());
+            }
+
+            BlockSink sink = blockWriteQueue.sinkFor(world);
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                long packed = in.readLong();
+                blockWriteQueue.setBlock(sink, BlockPos.unpackX(packed), BlockPos.unpackY(packed), BlockPos.unpackZ(packed),
+                        globalIds[in.readInt()], WritePriority.COSMETIC);
+            }
+            return entries;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package me.stavgordeev.plugin.Blocks;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.block.data.BlockData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives every block state the plugin writes a small int id, so queues, journals and floor grids can store block states as primitives.
+ * <p>
+ * States are interned by their string form ("minecraft:red_wool", "minecraft:oak_stairs[facing=east,...]").
+ * The {@link BlockData} of an id is only created when it is about to be written to a world, which has to happen on the main thread.
+ * Ids are never reused, and id 0 is always air.
+ */
+public final class BlockPalette {
+    public static final int AIR = 0;
+
+    private static final BlockPalette INSTANCE = new BlockPalette();
+
+    private final Map<String, Integer> idsByState = new HashMap<>();
+    private final List<String> statesById = new ArrayList<>();
+    private final int[] idsByMaterial = new int[Material.values().length]; // Written under the lock, read without it. -1 until a material is first looked up.
+    private final Map<BlockData, Integer> idsByBlockData = new HashMap<>(); // Main thread only.
+    private BlockData[] resolved = new BlockData[64]; // Main thread only.
+    private volatile Material[] materialsById = new Material[64];
+
+    private BlockPalette() {
+        Arrays.fill(idsByMaterial, -1);
+        intern(Material.AIR.getKey().toString());
+    }
+
+    public static BlockPalette get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return The id of a block state string, registering it if it wasn't seen before
+     */
+    public synchronized int intern(String blockState) {
+        Integer id = idsByState.get(blockState);
+        if (id != null) return id;
+
+        int newId = statesById.size();
+        statesById.add(blockState);
+        idsByState.put(blockState, newId);
+        return newId;
+    }
+
+    /**
+     * @return The id of the default state of a material. Cached per material, so this is an array lookup after the first call.
+     */
+    public int idOf(Material material) {
+        int id = idsByMaterial[material.ordinal()];
+        return id >= 0 ? id : cacheIdOf(material);
+    }
+
+    /**
+     * The slow path of {@link #idOf(Material)}. The cache is filled under the lock, so threads that miss it at the same time agree on the id.
+     * A reader that doesn't see the write yet only ends up here again.
+     */
+    private synchronized int cacheIdOf(Material material) {
+        int id = idsByMaterial[material.ordinal()];
+        if (id < 0) {
+            id = intern(material.getKey().toString());
+            idsByMaterial[material.ordinal()] = id;
+        }
+        return id;
+    }
+
+    /**
+     * @return The id of a block data. Must be called on the main thread.
+     */
+    public int idOf(BlockData blockData) {
+        if (blockData.getMaterial().isAir()) return AIR;
+
+        Integer id = idsByBlockData.get(blockData);
+        if (id == null) {
+            id = intern(blockData.getAsString());
+            idsByBlockData.put(blockData.clone(), id);
+        }
+        return id;
+    }
+
+    /**
+     * @return The block state string of an id
+     */
+    public synchronized String stateOf(int id) {
+        return statesById.get(id);
+    }
+
+    /**
+     * @return The block data of an id. Must be called on the main thread, since block data can only be created there.
+     */
+    public BlockData blockDataOf(int id) {
+        if (id >= resolved.length) {
+            resolved = Arrays.copyOf(resolved, Math.max(id + 1, resolved.length << 1));
+        }
+        BlockData blockData = resolved[id];
+        if (blockData == null) {
+            blockData = Bukkit.createBlockData(stateOf(id));
+            resolved[id] = blockData;
+        }
+        return blockData;
+    }
+
+    /**
+     * @return The material of an id. Worked out from the state string, so it doesn't need the server.
+     */
+    public Material materialOf(int id) {
+        Material[] materials = materialsById;
+        if (id < materials.length && materials[id] != null) return materials[id];
+
+        String state = stateOf(id);
+        int propertiesStart = state.indexOf('[');
+        Material material = Material.matchMaterial(propertiesStart < 0 ? state : state.substring(0, propertiesStart));
+        if (material == null) material = Material.AIR;
+
+        synchronized (this) {
+            if (id >= materialsById.length) materialsById = Arrays.copyOf(materialsById, Math.max(id + 1, materialsById.length << 1));
+            materialsById[id] = material;
+        }
+        return material;
+    }
+}
@@ -0,0 +1,21 @@
+package me.stavgordeev.plugin.Blocks;
+
+/**
+ * Something block states can be written to and read from. The block write queue applies its writes through a sink, so it doesn't care what is behind it.
+ */
+public interface BlockSink {
+    /**
+     * Reads a block state.
+     * @return The id of the block state in the {@link BlockPalette}
+     */
+    int getBlockState(int x, int y, int z);
+
+    /**
+     * Writes a block state.
+     * @param x The x coordinate of the block
+     * @param y The y coordinate of the block
+     * @param z The z coordinate of the block
+     * @param stateId The id of the block state in the {@link BlockPalette}
+     */
+    void setBlock(int x, int y, int z, int stateId);
+}
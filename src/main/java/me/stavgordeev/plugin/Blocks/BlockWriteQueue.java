@@ -0,0 +1,347 @@
+package me.stavgordeev.plugin.Blocks;
+
+import me.stavgordeev.plugin.DataStructures.BlockPos;
+import me.stavgordeev.plugin.DataStructures.LongArrayList;
+import me.stavgordeev.plugin.DataStructures.LongIntHashMap;
+import me.stavgordeev.plugin.Metrics.Metrics;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The central queue every minigame writes its blocks through.
+ * <p>
+ * Writes are not applied when they are issued. They are collected during the tick, writes to the same position are
+ * coalesced so only the last one is applied, and the queue is flushed at the end of the tick under a time budget.
+ * Whatever doesn't fit in the budget is carried over to the next tick. Critical writes are always applied before cosmetic ones.
+ * <p>
+ * Must only be used from the main thread.
+ */
+public class BlockWriteQueue {
+    private static final int MISSING = -1;
+    // Even when a tick is over budget, this many writes are applied, so a lagging server can't starve the queue forever.
+    private static final int MIN_WRITES_PER_FLUSH = 64;
+    // The clock is only read every this many writes, since System.nanoTime() isn't free either.
+    private static final int WRITES_BETWEEN_CLOCK_CHECKS = 32;
+    // Exported as counters, so rates can be taken from them. They only ever go up, across every queue.
+    private static final LongAdder appliedWrites = Metrics.counter("block_queue_applied_total");
+    private static final LongAdder coalescedWrites = Metrics.counter("block_queue_coalesced_total");
+
+    private final BlockPalette palette;
+    private final Lane[] lanes = new Lane[WritePriority.values().length];
+    // Pending writes per sink: packed position -> (stateId << 1 | priority ordinal).
+    private final Map<BlockSink, LongIntHashMap> pendingBySink = new IdentityHashMap<>();
+    private final Map<UUID, WorldBlockSink> worldSinks = new HashMap<>();
+    private final ArrayDeque<Barrier> barriers = new ArrayDeque<>();
+    private long tickBudgetNanos;
+
+    //----------------------------- Stats -----------------------------//
+    private int pendingWrites;
+    private int coalescedSinceFlush;
+    private int lastFlushApplied;
+    private int lastFlushCoalesced;
+    private long lastFlushNanos;
+    private long totalApplied;
+    private long totalCoalesced;
+    //------------------------------------------------------------------//
+
+    /**
+     * @param palette The palette the state ids of the writes come from
+     * @param tickBudgetMillis How many milliseconds a flush may take at most
+     */
+    public BlockWriteQueue(BlockPalette palette, double tickBudgetMillis) {
+        this.palette = palette;
+        for (WritePriority priority : WritePriority.values()) {
+            lanes[priority.ordinal()] = new Lane();
+        }
+        setTickBudgetMillis(tickBudgetMillis);
+    }
+
+    public void setTickBudgetMillis(double tickBudgetMillis) {
+        this.tickBudgetNanos = (long) (Math.max(tickBudgetMillis, 0) * 1_000_000);
+    }
+
+    public long getTickBudgetNanos() {
+        return tickBudgetNanos;
+    }
+
+    /**
+     * Queues a material to be written to a position in a world.
+     */
+    public void setBlock(World world, int x, int y, int z, Material material, WritePriority priority) {
+        setBlock(sinkFor(world), x, y, z, palette.idOf(material), priority);
+    }
+
+    /**
+     * Queues a block state to be written to a position.
+     * If the position already has a pending write, the pending write is replaced. A pending critical write stays critical.
+     * @param sink Where the block should be written to
+     * @param stateId The id of the block state in the {@link BlockPalette}
+     * @param priority How urgent the write is
+     */
+    public void setBlock(BlockSink sink, int x, int y, int z, int stateId, WritePriority priority) {
+        LongIntHashMap pending = pendingBySink.computeIfAbsent(sink, ignored -> new LongIntHashMap(256, MISSING));
+        long packed = BlockPos.pack(x, y, z);
+
+        int existing = pending.get(packed);
+        if (existing == MISSING) {
+            pending.put(packed, encode(stateId, priority.ordinal()));
+            lanes[priority.ordinal()].push(sink, packed);
+            pendingWrites++;
+            return;
+        }
+
+        coalescedSinceFlush++;
+        int existingPriority = existing & 1;
+        if (priority.ordinal() < existingPriority) {
+            // Promote the write. The entry in the lower priority lane goes stale and is skipped when it's reached.
+            pending.put(packed, encode(stateId, priority.ordinal()));
+            lanes[priority.ordinal()].push(sink, packed);
+        } else {
+            pending.put(packed, encode(stateId, existingPriority));
+        }
+    }
+
+    /**
+     * @return A writer that queues its writes into a sink
+     */
+    public BlockWriter writerFor(BlockSink sink) {
+        return (x, y, z, stateId, priority) -> setBlock(sink, x, y, z, stateId, priority);
+    }
+
+    /**
+     * @return The state a position will have once the queue is flushed. A pending write wins over what the sink holds right now.
+     */
+    public int getEffectiveState(BlockSink sink, int x, int y, int z) {
+        int pendingState = getPendingState(sink, x, y, z);
+        return pendingState != MISSING ? pendingState : sink.getBlockState(x, y, z);
+    }
+
+    /**
+     * @return The state id waiting to be written to a position, or -1 if the position has no pending write
+     */
+    public int getPendingState(BlockSink sink, int x, int y, int z) {
+        LongIntHashMap pending = pendingBySink.get(sink);
+        if (pending == null) return MISSING;
+
+        int entry = pending.get(BlockPos.pack(x, y, z));
+        return entry == MISSING ? MISSING : entry >>> 1;
+    }
+
+    /**
+     * Replaces every pending write inside a cuboid with a different state. Used when an area is cleared while writes into it are still queued,
+     * otherwise those writes would land after the area was cleared. The bounds are inclusive.
+     */
+    public void replacePendingWithin(BlockSink sink, int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int stateId, WritePriority priority) {
+        LongIntHashMap pending = pendingBySink.get(sink);
+        if (pending == null || pending.isEmpty()) return;
+
+        LongArrayList inside = new LongArrayList();
+        pending.forEach((packed, entry) -> {
+            int x = BlockPos.unpackX(packed), y = BlockPos.unpackY(packed), z = BlockPos.unpackZ(packed);
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) inside.add(packed);
+        });
+        for (int i = 0; i < inside.size(); i++) {
+            long packed = inside.get(i);
+            setBlock(sink, BlockPos.unpackX(packed), BlockPos.unpackY(packed), BlockPos.unpackZ(packed), stateId, priority);
+        }
+    }
+
+    /**
+     * @return A future that completes once every write queued before this call has been applied
+     */
+    public CompletableFuture<Void> barrier() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (pendingWrites == 0) {
+            future.complete(null);
+            return future;
+        }
+
+        long[] targets = new long[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            targets[i] = lanes[i].pushed;
+        }
+        barriers.add(new Barrier(targets, future));
+        return future;
+    }
+
+    /**
+     * Applies queued writes until the budget runs out. Meant to be called once at the end of every tick.
+     * @param budgetNanos How long the flush may take. Capped by the configured tick budget.
+     */
+    public void flush(long budgetNanos) {
+        long start = System.nanoTime();
+        long budget = Math.min(budgetNanos, tickBudgetNanos);
+        int applied = 0;
+
+        lanes:
+        for (int priority = 0; priority < lanes.length; priority++) {
+            Lane lane = lanes[priority];
+            while (!lane.isEmpty()) {
+                if (applied >= MIN_WRITES_PER_FLUSH && applied % WRITES_BETWEEN_CLOCK_CHECKS == 0 && System.nanoTime() - start >= budget) {
+                    break lanes;
+                }
+
+                BlockSink sink = lane.peekSink();
+                long packed = lane.pop();
+                LongIntHashMap pending = pendingBySink.get(sink);
+                int entry = pending.get(packed);
+                // Either already applied from a higher priority lane, or promoted to one.
+                if (entry == MISSING || (entry & 1) != priority) continue;
+
+                pending.remove(packed);
+                pendingWrites--;
+                sink.setBlock(BlockPos.unpackX(packed), BlockPos.unpackY(packed), BlockPos.unpackZ(packed), entry >>> 1);
+                applied++;
+            }
+        }
+
+        lastFlushApplied = applied;
+        lastFlushCoalesced = coalescedSinceFlush;
+        lastFlushNanos = System.nanoTime() - start;
+        totalApplied += applied;
+        totalCoalesced += coalescedSinceFlush;
+        appliedWrites.add(applied);
+        coalescedWrites.add(coalescedSinceFlush);
+        coalescedSinceFlush = 0;
+
+        completeBarriers();
+    }
+
+    /**
+     * Applies every queued write regardless of the budget. Used when the plugin shuts down, so no write is lost.
+     */
+    public void flushAll() {
+        long budget = tickBudgetNanos;
+        tickBudgetNanos = Long.MAX_VALUE;
+        try {
+            flush(Long.MAX_VALUE);
+        } finally {
+            tickBudgetNanos = budget;
+        }
+    }
+
+    /**
+     * @return The sink that writes into a Bukkit world. Sinks are cached, so writes to the same world coalesce with each other.
+     */
+    public BlockSink sinkFor(World world) {
+        return worldSinks.computeIfAbsent(world.getUID(), ignored -> new WorldBlockSink(world, palette));
+    }
+
+    public BlockPalette getPalette() {
+        return palette;
+    }
+
+    /**
+     * @return A snapshot of the queue's counters, used to tune the budget under load
+     */
+    public Stats getStats() {
+        return new Stats(lastFlushApplied, lastFlushCoalesced, lastFlushNanos, pendingWrites,
+                lanes[WritePriority.CRITICAL.ordinal()].size(), lanes[WritePriority.COSMETIC.ordinal()].size(),
+                totalApplied, totalCoalesced);
+    }
+
+    /**
+     * @param lastFlushApplied How many writes the last flush applied
+     * @param lastFlushCoalesced How many writes were absorbed by coalescing during the last tick
+     * @param lastFlushNanos How long the last flush took
+     * @param pendingWrites How many positions are waiting to be written
+     * @param criticalLaneLength Entries in the critical lane, including stale ones
+     * @param cosmeticLaneLength Entries in the cosmetic lane, including stale ones
+     * @param totalApplied How many writes were applied since the queue was created
+     * @param totalCoalesced How many writes were absorbed by coalescing since the queue was created
+     */
+    public record Stats(int lastFlushApplied, int lastFlushCoalesced, long lastFlushNanos, int pendingWrites,
+                        int criticalLaneLength, int cosmeticLaneLength, long totalApplied, long totalCoalesced) {
+    }
+
+    //------------------------------- Internals --------------------------------//
+
+    private static int encode(int stateId, int priority) {
+        return (stateId << 1) | priority;
+    }
+
+    private void completeBarriers() {
+        Iterator<Barrier> iterator = barriers.iterator();
+        while (iterator.hasNext()) {
+            Barrier barrier = iterator.next();
+            if (pendingWrites == 0 || barrier.isPassed(lanes)) {
+                iterator.remove();
+                barrier.future.complete(null);
+            }
+        }
+    }
+
+    private record Barrier(long[] targets, CompletableFuture<Void> future) {
+        boolean isPassed(Lane[] lanes) {
+            for (int i = 0; i < lanes.length; i++) {
+                if (lanes[i].popped < targets[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A FIFO of pending positions for one priority. Positions are not removed when their write is replaced or promoted,
+     * the flush skips them instead, so queueing stays O(1).
+     */
+    private static final class Lane {
+        private long[] positions = new long[256];
+        private BlockSink[] sinks = new BlockSink[256];
+        private int head;
+        private int size;
+        private long pushed;
+        private long popped;
+
+        void push(BlockSink sink, long packed) {
+            if (size == positions.length) grow();
+            int tail = (head + size) & (positions.length - 1);
+            positions[tail] = packed;
+            sinks[tail] = sink;
+            size++;
+            pushed++;
+        }
+
+        BlockSink peekSink() {
+            return sinks[head];
+        }
+
+        long pop() {
+            long packed = positions[head];
+            sinks[head] = null;
+            head = (head + 1) & (positions.length - 1);
+            size--;
+            popped++;
+            return packed;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void grow() {
+            long[] newPositions = new long[positions.length << 1];
+            BlockSink[] newSinks = new BlockSink[sinks.length << 1];
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) & (positions.length - 1);
+                newPositions[i] = positions[index];
+                newSinks[i] = sinks[index];
+            }
+            positions = newPositions;
+            sinks = newSinks;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package me.stavgordeev.plugin.Blocks;
+
+/**
+ * Something the game logic writes blocks through. Either the block write queue itself, or an {@link ArenaJournal} in front of it.
+ */
+@FunctionalInterface
+public interface BlockWriter {
+    /**
+     * Writes a block state.
+     * @param stateId The id of the block state in the {@link BlockPalette}
+     * @param priority How urgent the write is
+     */
+    void setBlock(int x, int y, int z, int stateId, WritePriority priority);
+}
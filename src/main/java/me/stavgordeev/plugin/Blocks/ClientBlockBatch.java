@@ -0,0 +1,71 @@
+package me.stavgordeev.plugin.Blocks;
+
+import io.papermc.paper.math.Position;
+import me.stavgordeev.plugin.DataStructures.BlockPos;
+import me.stavgordeev.plugin.DataStructures.LongIntHashMap;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects block changes that are only shown to players, without touching the world. The changes are sent as one multi block change
+ * per player, so the server doesn't pay for lighting, physics or saving chunks, and the client gets one packet per chunk section.
+ * <p>
+ * Only for blocks that don't matter to the server, like colors that are about to change again. A player that comes back to the area
+ * after the changes were sent sees what the world really holds.
+ * <p>
+ * The changes are kept as palette ids, and only turned into block data once the batch is sent to someone.
+ * <p>
+ * Must only be used from the main thread.
+ */
+public class ClientBlockBatch implements BlockWriter {
+    private final BlockPalette palette;
+    private final LongIntHashMap changes = new LongIntHashMap(256, -1);
+    private Map<Position, BlockData> resolvedChanges; // Built when the batch is first sent, and reused for every player it's sent to.
+
+    public ClientBlockBatch(BlockPalette palette) {
+        this.palette = palette;
+    }
+
+    /**
+     * Adds a change to the batch. The priority doesn't matter, since nothing is written to the world.
+     */
+    @Override
+    public void setBlock(int x, int y, int z, int stateId, WritePriority priority) {
+        changes.put(BlockPos.pack(x, y, z), stateId);
+        resolvedChanges = null;
+    }
+
+    /**
+     * Sends the batch to a player. The player has to be in the world the changes are meant for, since the client applies them to whatever world it's in.
+     */
+    public void sendTo(Player player) {
+        if (changes.isEmpty()) return;
+
+        if (resolvedChanges == null) {
+            Map<Position, BlockData> resolved = new HashMap<>(changes.size() * 2);
+            changes.forEach((packed, stateId) -> resolved.put(
+                    Position.block(BlockPos.unpackX(packed), BlockPos.unpackY(packed), BlockPos.unpackZ(packed)), palette.blockDataOf(stateId)));
+            resolvedChanges = resolved;
+        }
+        player.sendMultiBlockChange(resolvedChanges);
+    }
+
+    /**
+     * Empties the batch, so it can be filled again.
+     */
+    public void clear() {
+        changes.clear();
+        resolvedChanges = null;
+    }
+
+    public int size() {
+        return changes.size();
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+}
@@ -0,0 +1,30 @@
+package me.stavgordeev.plugin.Blocks;
+
+import org.bukkit.World;
+
+/**
+ * Writes block states into a Bukkit world. Physics updates are skipped, since every block we write is already in its final state.
+ */
+public class WorldBlockSink implements BlockSink {
+    private final World world;
+    private final BlockPalette palette;
+
+    public WorldBlockSink(World world, BlockPalette palette) {
+        this.world = world;
+        this.palette = palette;
+    }
+
+    @Override
+    public int getBlockState(int x, int y, int z) {
+        return palette.idOf(world.getBlockAt(x, y, z).getBlockData());
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, int stateId) {
+        world.getBlockAt(x, y, z).setBlockData(palette.blockDataOf(stateId), false);
+    }
+
+    public World getWorld() {
+        return world;
+    }
+}
@@ -0,0 +1,15 @@
+package me.stavgordeev.plugin.Blocks;
+
+/**
+ * How urgent a queued block write is. When a tick runs out of budget, critical writes are applied before cosmetic ones.
+ */
+public enum WritePriority {
+    /**
+     * Blocks players interact with, like the floor they stand on or the floor that is about to disappear.
+     */
+    CRITICAL,
+    /**
+     * Blocks that only matter visually, or cleanup nobody is waiting on.
+     */
+    COSMETIC
+}
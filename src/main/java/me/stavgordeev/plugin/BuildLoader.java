@@ -4,78 +4,335 @@ import com.sk89q.worldedit.WorldEdit;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.bukkit.BukkitAdapter;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
-import com.sk89q.worldedit.function.operation.Operation;
-import com.sk89q.worldedit.function.operation.Operations;
 import com.sk89q.worldedit.math.BlockVector3;
-import com.sk89q.worldedit.session.ClipboardHolder;
 import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockSink;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Blocks.BlockWriter;
+import me.stavgordeev.plugin.Blocks.WritePriority;
+import me.stavgordeev.plugin.DataStructures.BlockPos;
+import me.stavgordeev.plugin.Metrics.Metrics;
+import me.stavgordeev.plugin.Platform.GameTask;
+import me.stavgordeev.plugin.Schematics.BakedBuild;
+import me.stavgordeev.plugin.Schematics.BuildBlocks;
+import me.stavgordeev.plugin.Schematics.BuildTarget;
+import me.stavgordeev.plugin.Schematics.PlotState;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.Location;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.FallingBlock;
 import org.bukkit.util.Vector;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class BuildLoader {
+    // How many blocks of a schematic are handed to the block write queue per tick. The queue then writes them under its own time budget.
+    private static final int BLOCKS_QUEUED_PER_TICK = 8192;
+    // How many schematics may wait to be read at once. Loads beyond that fail right away instead of piling up.
+    private static final int MAX_WAITING_LOADS = 32;
+
+    // Reads and parses schematic files off the main thread. The threads are daemons, so they don't keep a stopping server alive.
+    private static final ThreadPoolExecutor LOADER = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_WAITING_LOADS), runnable -> {
+                Thread thread = new Thread(runnable, "MinigamePlugin schematic loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    static {
+        LOADER.allowCoreThreadTimeOut(true);
+    }
+
     /**
-     * Load a schematic file into the world at the specified location.
+     * Load a schematic file into the world at the specified location, without holding up the server.
+     * <p>
+     * If the schematic has an up to date {@link BakedBuild}, that is memory mapped and its blocks are streamed into the queue.
+     * Otherwise the file is read and parsed with WorldEdit on a background thread (or taken from the plugin's {@link me.stavgordeev.plugin.Schematics.ClipboardCache}),
+     * and its blocks are turned into palette ids there as well. Only the queueing of the blocks happens on the main thread,
+     * a chunk of them every tick, and the block write queue then writes them under its time budget.
+     * Blocks that carry NBT data (signs, chests...) are pasted with WorldEdit once the queued blocks are in.
+     * <p>
+     * Cancelling the returned future stops the load wherever it is. Blocks that were already queued still get written.
      *
      * @param file        The schematic file to load.
      * @param world The world to load the schematic into.
      * @param x           The x-coordinate to paste the schematic at.
      * @param y           The y-coordinate to paste the schematic at.
      * @param z           The z-coordinate to paste the schematic at.
+     * @return A future that completes on the main thread with how many blocks were written, once they are all in the world.
+     * It fails, also on the main thread, if the schematic couldn't be loaded, or if too many schematics are already waiting to be read.
+     */
+    public static CompletableFuture<Integer> loadSchematic(File file, World world, int x, int y, int z) {
+        return loadSchematic(file, world, x, y, z, null);
+    }
+
+    /**
+     * Same as {@link #loadSchematic(File, World, int, int, int)}, but onto a plot that builds are pasted on one after the other.
+     * Only the blocks that differ from what the plot already holds are written.
+     *
+     * @param plot What the earlier builds left on the plot, or null to write every block
+     * @return A future that completes on the main thread with how many blocks were written, once they are all in the world.
+     * Blocks the plot already held are not counted.
      */
-    public static void loadSchematic(File file, World world, int x, int y, int z) {
-        //fixme: make sure that pasted blocks are not affected by gravity
-        ClipboardFormat format = ClipboardFormats.findByFile(file);
-        if (format == null) {
-            Bukkit.getLogger().warning("Unsupported schematic format: " + file.getName());
-            return;
+    public static CompletableFuture<Integer> loadSchematic(File file, World world, int x, int y, int z, @Nullable PlotState plot) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        Executor mainThread = task -> Bukkit.getScheduler().runTask(MinigamePlugin.plugin, task);
+
+        try {
+            LOADER.execute(() -> {
+                if (result.isDone()) return; // Cancelled while it was waiting
+                try {
+                    ReadBuild build = read(file, MinigamePlugin.getBlockWriteQueue().getPalette(), x, y, z);
+                    Metrics.histogram("schematic_read_seconds").record(System.nanoTime() - start);
+
+                    mainThread.execute(() -> new Paste(build.blocks, build.blocksWithNbt, world, plot, result).start());
+                } catch (Exception e) {
+                    // A broken file can fail anywhere in WorldEdit, not only with an IOException. The future fails on the main thread either way.
+                    mainThread.execute(() -> result.completeExceptionally(e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mainThread.execute(() -> result.completeExceptionally(new IOException("Too many schematics are waiting to be loaded", e)));
         }
 
-        Location location = new Location(world, x, y, z);
+        // The future itself is returned, not the one whenComplete makes, so cancelling it reaches the load.
+        result.whenComplete((pasted, error) -> {
+            if (error == null) {
+                // From the call to the last block being in the world.
+                Metrics.histogram("schematic_paste_seconds").record(System.nanoTime() - start);
+                Bukkit.getLogger().info("Successfully pasted schematic: " + file.getName());
+            } else if (!(error instanceof CancellationException)) {
+                Bukkit.getLogger().severe("Failed to load schematic " + file.getName() + ": " + error.getMessage());
+            }
+        });
+        return result;
+    }
 
-        // Load the schematic. We'll wrap it in a try-resource to make sure it's closed properly.
-        try (FileInputStream fis = new FileInputStream(file);
-             ClipboardReader reader = format.getReader(fis)) // Get a reader for the schematic.
-        {
-            Clipboard clipboard = reader.read(); // Load the schematic into a clipboard.
-            // Create an edit session and paste the schematic.
-            EditSession editSession = WorldEdit.getInstance()
-                    .newEditSessionBuilder()
-                    .world(BukkitAdapter.adapt(world))
-                    .build();
-            // Create an operation to paste the schematic.
-            Operation operation = new ClipboardHolder(clipboard)
-                    .createPaste(editSession)
-                    .to(BlockVector3.at(x, y, z)) // Paste location
-                    .ignoreAirBlocks(false)
-                    .build();
+    /**
+     * Reads a schematic file into memory as a {@link BuildTarget}, to score how close a plot is to it. Nothing is pasted.
+     * The file is read the same way {@link #loadSchematic(File, World, int, int, int)} reads it, on the same background threads.
+     *
+     * @param file The schematic file to read.
+     * @param x    The x-coordinate the target's origin is at. Same for y and z.
+     * @return A future that completes on the main thread with the target.
+     * It fails, also on the main thread, if the schematic couldn't be read, or if too many schematics are already waiting to be read.
+     */
+    public static CompletableFuture<BuildTarget> loadTarget(File file, int x, int y, int z) {
+        CompletableFuture<BuildTarget> result = new CompletableFuture<>();
+        Executor mainThread = task -> Bukkit.getScheduler().runTask(MinigamePlugin.plugin, task);
 
+        try {
+            LOADER.execute(() -> {
+                if (result.isDone()) return; // Cancelled while it was waiting
+                try {
+                    BlockPalette palette = MinigamePlugin.getBlockWriteQueue().getPalette();
+                    ReadBuild build = read(file, palette, x, y, z);
+                    BuildTarget.Collector collector = BuildTarget.collect(build.blocks);
+                    for (Map.Entry<BlockVector3, BaseBlock> entry : build.blocksWithNbt.entrySet()) {
+                        BlockVector3 position = entry.getKey();
+                        collector.setBlock(position.getBlockX(), position.getBlockY(), position.getBlockZ(),
+                                palette.intern(entry.getValue().toImmutableState().getAsString()), WritePriority.COSMETIC);
+                    }
+                    BuildTarget target = collector.build();
+                    mainThread.execute(() -> result.complete(target));
+                } catch (Exception e) {
+                    mainThread.execute(() -> result.completeExceptionally(e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mainThread.execute(() -> result.completeExceptionally(new IOException("Too many schematics are waiting to be loaded", e)));
+        }
+        return result;
+    }
+
+    /**
+     * Stops the loader threads. Loads that didn't finish are dropped. Called when the plugin is disabled.
+     */
+    public static void shutdown() {
+        LOADER.shutdownNow();
+    }
 
-            //disableGravity(location,10); // Disable gravity for the blocks in the schematic.
+    /**
+     * Reads the blocks of a schematic, from its baked file if it has one that is up to date, otherwise with WorldEdit. Runs off the main thread.
+     */
+    private static ReadBuild read(File file, BlockPalette palette, int x, int y, int z) throws IOException {
+        BuildBlocks blocks = openBaked(file, palette, x, y, z);
+        if (blocks != null) return new ReadBuild(blocks, Map.of());
 
-            // Execute the operation.
-            Operations.complete(operation);
-            // Close the edit session.
-            editSession.close();
+        Clipboard clipboard = MinigamePlugin.getClipboardCache().get(file); // Load the schematic into a clipboard, or take it from the cache.
+        if (clipboard == null) throw new IOException("Unsupported schematic format: " + file.getName());
 
-            //enableGravity(location,10); // Re-enable gravity at the area where the schematic was pasted. However, the current pasted blocks will not be affected by this.
+        PreparedSchematic prepared = prepare(clipboard, BlockVector3.at(x, y, z), palette);
+        return new ReadBuild(prepared, prepared.blocksWithNbt);
+    }
 
-            Bukkit.getLogger().info("Successfully pasted schematic: " + file.getName());
+    /**
+     * The blocks of a schematic that was read, and the blocks with NBT data that have to be pasted with WorldEdit.
+     */
+    private record ReadBuild(BuildBlocks blocks, Map<BlockVector3, BaseBlock> blocksWithNbt) {
+    }
 
+    /**
+     * Opens the baked file of a schematic, if it has one that is up to date. A baked file that can't be read is skipped, and the schematic is used instead.
+     * @return The blocks of the baked build, or null if the schematic has to be read with WorldEdit
+     */
+    private static BuildBlocks openBaked(File schematic, BlockPalette palette, int x, int y, int z) {
+        if (!BakedBuild.isUpToDate(schematic)) return null;
+        try {
+            return BakedBuild.open(BakedBuild.bakedFileOf(schematic), palette, x, y, z);
         } catch (IOException e) {
-            Bukkit.getLogger().severe("Failed to load schematic: " + e.getMessage());
-        } catch (WorldEditException e) {
-            Bukkit.getLogger().severe("WorldEdit error while pasting schematic: " + e.getMessage());
+            Bukkit.getLogger().warning("Failed to read the baked build of " + schematic.getName() + ", using the schematic instead: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The blocks of a clipboard, ready to be queued: the positions they go to, and the palette ids of their states.
+     * The clipboard's origin is placed at the paste location, the same way a WorldEdit paste would place it.
+     * Blocks with NBT data are kept apart, since the queue only knows block states.
+     */
+    private static final class PreparedSchematic implements BuildBlocks {
+        private final long[] positions;
+        private final int[] stateIds;
+        private final Map<BlockVector3, BaseBlock> blocksWithNbt;
+        private int next; // The index of the next block to queue
+
+        PreparedSchematic(long[] positions, int[] stateIds, Map<BlockVector3, BaseBlock> blocksWithNbt) {
+            this.positions = positions;
+            this.stateIds = stateIds;
+            this.blocksWithNbt = blocksWithNbt;
+        }
+
+        @Override
+        public int queueNext(BlockWriter writer, int max, WritePriority priority) {
+            int end = Math.min(next + max, positions.length);
+            for (int i = next; i < end; i++) {
+                long packed = positions[i];
+                writer.setBlock(BlockPos.unpackX(packed), BlockPos.unpackY(packed), BlockPos.unpackZ(packed), stateIds[i], priority);
+            }
+            int queued = end - next;
+            next = end;
+            return queued;
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+    }
+
+    /**
+     * Turns every block of a clipboard, air included, into a palette id. Runs off the main thread, the palette can be interned into from any thread.
+     *
+     * @param clipboard The clipboard to paste.
+     * @param to        Where the clipboard's origin should end up.
+     * @param palette   The palette of the block write queue.
+     */
+    private static PreparedSchematic prepare(Clipboard clipboard, BlockVector3 to, BlockPalette palette) {
+        BlockVector3 offset = to.subtract(clipboard.getOrigin());
+        int volume = (int) clipboard.getRegion().getVolume();
+        long[] positions = new long[volume];
+        int[] stateIds = new int[volume];
+        Map<BlockVector3, BaseBlock> blocksWithNbt = new HashMap<>();
+
+        int count = 0;
+        for (BlockVector3 position : clipboard.getRegion()) {
+            BaseBlock block = clipboard.getFullBlock(position);
+            BlockVector3 target = position.add(offset);
+            if (block.hasNbtData()) {
+                blocksWithNbt.put(target, block);
+                continue;
+            }
+            positions[count] = BlockPos.pack(target.getBlockX(), target.getBlockY(), target.getBlockZ());
+            stateIds[count] = palette.intern(block.toImmutableState().getAsString());
+            count++;
+        }
+        return new PreparedSchematic(Arrays.copyOf(positions, count), Arrays.copyOf(stateIds, count), blocksWithNbt);
+    }
+
+    /**
+     * Queues the blocks of a build, a chunk of them every tick, then pastes the blocks with NBT data once the rest is written.
+     * The queue writes without physics, so blocks that are affected by gravity stay where the schematic puts them. Main thread only.
+     */
+    private static final class Paste implements Runnable {
+        private final BuildBlocks blocks;
+        private final Map<BlockVector3, BaseBlock> blocksWithNbt;
+        private final World world;
+        private final PlotState plot;
+        private final CompletableFuture<Integer> result;
+        private final BlockWriteQueue blockWriteQueue = MinigamePlugin.getBlockWriteQueue();
+        private final BlockWriter writer;
+        private GameTask task;
+        private int written;
+
+        Paste(BuildBlocks blocks, Map<BlockVector3, BaseBlock> blocksWithNbt, World world, @Nullable PlotState plot, CompletableFuture<Integer> result) {
+            this.blocks = blocks;
+            this.blocksWithNbt = blocksWithNbt;
+            this.world = world;
+            this.plot = plot;
+            this.result = result;
+            BlockSink sink = blockWriteQueue.sinkFor(world);
+            BlockWriter queueWriter = (x, y, z, stateId, priority) -> {
+                blockWriteQueue.setBlock(sink, x, y, z, stateId, priority);
+                written++;
+            };
+            this.writer = plot == null ? queueWriter : plot.writerOver(queueWriter);
+        }
+
+        void start() {
+            if (result.isDone()) return; // Cancelled while it was being read
+            if (plot != null) {
+                // WorldEdit writes these, so the plot can't tell what they hold afterwards.
+                for (BlockVector3 position : blocksWithNbt.keySet()) {
+                    plot.forget(position.getBlockX(), position.getBlockY(), position.getBlockZ());
+                }
+            }
+            task = MinigamePlugin.getGameServer().getClock().runEveryTick(this);
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                task.cancel();
+                return;
+            }
+
+            if (blocks.queueNext(writer, BLOCKS_QUEUED_PER_TICK, WritePriority.COSMETIC) == BLOCKS_QUEUED_PER_TICK) return;
+
+            task.cancel();
+            int pasted = written + blocksWithNbt.size();
+            blockWriteQueue.barrier().thenRun(() -> {
+                if (result.isDone()) return;
+                pasteBlocksWithNbt();
+                result.complete(pasted);
+            });
+        }
+
+        private void pasteBlocksWithNbt() {
+            if (blocksWithNbt.isEmpty()) return;
+            try (EditSession editSession = WorldEdit.getInstance().newEditSessionBuilder().world(BukkitAdapter.adapt(world)).build()) {
+                for (Map.Entry<BlockVector3, BaseBlock> entry : blocksWithNbt.entrySet()) {
+                    editSession.setBlock(entry.getKey(), entry.getValue());
+                }
+            } catch (WorldEditException e) {
+                Bukkit.getLogger().severe("WorldEdit error while pasting schematic: " + e.getMessage());
+            }
         }
     }
 
@@ -1,16 +1,18 @@
 package me.stavgordeev.plugin.Constants;
 
-import org.bukkit.Bukkit;
-import org.bukkit.Location;
-import org.bukkit.World;
+import org.bukkit.util.Vector;
 
 public class BlueprintBazaarConst {
-    public static final World WORLD = Bukkit.getWorld("world");
-    public static final Location GAME_START_LOCATION = new Location(WORLD, 0, 150, 0);
-    public static final Location LEFT_BUILD_PLOT = new Location(WORLD, GAME_START_LOCATION.x()-10, GAME_START_LOCATION.y()+2, GAME_START_LOCATION.z()+10);
-    public static final Location CENTER_BUILD_PLOT = new Location(WORLD, GAME_START_LOCATION.x(), GAME_START_LOCATION.y()+2, GAME_START_LOCATION.z()+10);
-    public static final Location RIGHT_BUILD_PLOT = new Location(WORLD, GAME_START_LOCATION.x()+10, GAME_START_LOCATION.y()+2, GAME_START_LOCATION.z()+10);
+    // Offsets from the origin of the game's arena. Use them with Arena.at(), which doesn't change them.
+    public static final Vector LEFT_BUILD_PLOT = new Vector(-10, 2, 10);
+    public static final Vector CENTER_BUILD_PLOT = new Vector(0, 2, 10);
+    public static final Vector RIGHT_BUILD_PLOT = new Vector(10, 2, 10);
+    // Where the players copy the build that is shown on the center plot. Moved further out for builds that are too wide for them.
+    public static final Vector[] REPLICA_PLOTS = {LEFT_BUILD_PLOT, RIGHT_BUILD_PLOT};
+    public static final int PLAYER_TP_HEIGHT = 8;
 
 
     public static final int GAME_AREA_RADIUS = 50;
+    public static final int ROUND_TICKS = 20 * 60; // How long the players have to copy a build
+    public static final int TICKS_BETWEEN_ROUNDS = 40;
 }
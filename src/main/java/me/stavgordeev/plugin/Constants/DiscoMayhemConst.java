@@ -1,10 +1,7 @@
 // src/main/java/me/stavgordeev/plugin/MinigameConstants.java
 package me.stavgordeev.plugin.Constants;
 
-import org.bukkit.Bukkit;
-import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.World;
 
 import java.lang.reflect.Field;
 
@@ -20,6 +17,8 @@ public class DiscoMayhemConst {
             public static final int LOWER_BOUND_Z_CENTER = 5;
             public static final int UPPER_BOUND_Y_CENTER = 1;
             public static final int LOWER_BOUND_Y_CENTER = -3;
+            // How many random centers are tried for a new floor before settling for one that overlaps an older floor.
+            public static final int MAX_PLACEMENT_ATTEMPTS = 12;
         }
         public static class FloorSize {
             public static final int UPPER_BOUND_X_RADIUS = 7;
@@ -41,6 +40,9 @@ public class DiscoMayhemConst {
         }
 
 
+        // How far floors may spread from the arena's origin. Has to stay inside the area that is cleared when the game starts.
+        public static final int ARENA_RADIUS = 45;
+
         public static final int DELAY_TO_SELECT_A_FLOOR_MATERIAL = 25;
         public static final int DURATION_OF_STAYING_IN_A_FLOOR_WITH_ONLY_CHOSEN_MATERIAL = 60;
 
@@ -48,11 +50,15 @@ public class DiscoMayhemConst {
         public static final Material[] DEFAULT_FLOOR_BLOCK_TYPES = new Material[]{Material.RED_WOOL, Material.BLUE_WOOL, Material.GREEN_WOOL,Material.PURPLE_WOOL};
     }
 
-    public static final World WORLD = Bukkit.getWorld("world");
-    public static final Location GAME_START_LOCATION = new Location(WORLD, 0, 150, 0);
-    public static final Location INIT_FLOOR_LOCATION = DiscoMayhemConst.GAME_START_LOCATION.clone().add(0, 8, 0);
-    public static final Location PLAYER_TP_LOCATION = DiscoMayhemConst.GAME_START_LOCATION.clone().add(0, 11, 0);
+    // Heights are relative to the origin of the game's arena.
+    public static final int INIT_FLOOR_HEIGHT = 8;
+    public static final int PLAYER_TP_HEIGHT = 11;
+    public static final int GAME_AREA_RADIUS = 50; // The radius of the area that is cleared when the game starts.
+    public static final int VIEWER_RANGE = GAME_AREA_RADIUS + 64; // How far from the arena's origin players are sent the floor's client side changes.
     public static final int MIN_INTERVAL = 1;
+    public static final int JOURNAL_SAVE_INTERVAL = 20*5; // How often the arena journal is saved to disk, in ticks.
+    // How far below the lowest standing floor a player is out. A new floor is never placed this far below the one before it, so nobody this low can be caught again.
+    public static final int ELIMINATION_DEPTH = -FloorLogic.NewFloorSpawnBoundaries.LOWER_BOUND_Y_CENTER + 2;
 
 
 
@@ -0,0 +1,203 @@
+package me.stavgordeev.plugin.DataStructures;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from primitive longs to primitive ints.
+ * Keys are usually packed block positions (see {@link BlockPos}), so lookups don't box anything and the whole map is two flat arrays.
+ * Not thread safe.
+ */
+public class LongIntHashMap {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+    private final int missingValue;
+
+    /**
+     * @param initialCapacity The amount of entries the map should hold before it has to grow
+     * @param missingValue The value returned by {@link #get(long)} when a key is not in the map
+     */
+    public LongIntHashMap(int initialCapacity, int missingValue) {
+        this.missingValue = missingValue;
+        allocate(tableSizeFor(initialCapacity));
+    }
+
+    public LongIntHashMap() {
+        this(16, -1);
+    }
+
+    /**
+     * @return The value mapped to the key, or the missing value if there is none
+     */
+    public int get(long key) {
+        int index = indexOf(key);
+        return index < 0 ? missingValue : values[index];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Maps a key to a value.
+     * @return The previous value of the key, or the missing value if there was none
+     */
+    public int put(long key, int value) {
+        int index = slotFor(key);
+        if (used[index]) {
+            int previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+        insertAt(index, key, value);
+        return missingValue;
+    }
+
+    /**
+     * Maps a key to a value only if the key isn't in the map yet.
+     * @return The current value of the key, or the missing value if the key was just inserted
+     */
+    public int putIfAbsent(long key, int value) {
+        int index = slotFor(key);
+        if (used[index]) {
+            return values[index];
+        }
+        insertAt(index, key, value);
+        return missingValue;
+    }
+
+    /**
+     * Removes a key from the map.
+     * @return The value the key was mapped to, or the missing value if there was none
+     */
+    public int remove(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return missingValue;
+        }
+        int previous = values[index];
+        shiftBack(index);
+        size--;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Calls the consumer for every entry in the map. The map must not be modified while iterating.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) consumer.accept(keys[i], values[i]);
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    //------------------------------- Internals --------------------------------//
+
+    private int indexOf(long key) {
+        int index = hash(key) & mask;
+        while (used[index]) {
+            if (keys[index] == key) return index;
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The slot holding the key, or the empty slot the key should be inserted in
+     */
+    private int slotFor(long key) {
+        int index = hash(key) & mask;
+        while (used[index] && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void insertAt(int index, long key, int value) {
+        keys[index] = key;
+        values[index] = value;
+        used[index] = true;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Backward shift deletion: moves the following entries of the probe chain back, so no tombstones are needed.
+     */
+    private void shiftBack(int removed) {
+        int gap = removed;
+        int index = (removed + 1) & mask;
+        while (used[index]) {
+            int home = hash(keys[index]) & mask;
+            // The entry can move into the gap only if its home slot isn't cyclically between the gap and its current slot.
+            boolean canMove = gap <= index ? (home <= gap || home > index) : (home <= gap && home > index);
+            if (canMove) {
+                keys[gap] = keys[index];
+                values[gap] = values[index];
+                gap = index;
+            }
+            index = (index + 1) & mask;
+        }
+        used[gap] = false;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (!oldUsed[i]) continue;
+            int index = slotFor(oldKeys[i]);
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+            used[index] = true;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expectedEntries) {
+        int needed = (int) Math.ceil(Math.max(expectedEntries, 2) / LOAD_FACTOR);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    private static int hash(long key) {
+        // Murmur3 finalizer. Packed positions differ mostly in a few bit ranges, so they have to be mixed before masking.
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,233 @@
+package me.stavgordeev.plugin.Floors;
+
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockWriter;
+import me.stavgordeev.plugin.Blocks.WritePriority;
+import org.bukkit.Material;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A rectangular floor, held in memory as one byte per block. Each byte is an index into the floor's materials, or {@link #EMPTY} for air.
+ * A block can also be {@link #DISOWNED}, when a newer floor was placed over it (see {@link FloorRegistry}). The floor never writes to those again.
+ * <p>
+ * New patterns are computed into a second buffer and only the blocks whose index changed are written, so a cycle step where
+ * a block randomly keeps its color costs nothing. Because the grid knows what every block is, removing colors doesn't need to read the world either.
+ * <p>
+ * A pattern can also be shown to players only (see {@link #randomizeForViewers(Random, BlockWriter)}). The grid then keeps what the players see
+ * apart from what the world holds, until the shown pattern is committed to the world.
+ */
+public class FloorGrid {
+    public static final byte EMPTY = -1;
+    public static final byte DISOWNED = -2;
+
+    private final int centerX, y, centerZ;
+    private final int xRad, zRad;
+    private final int depth; // The amount of blocks along the z axis.
+    private final Material[] materials;
+    private final int[] stateIds;
+    private byte[] cells;
+    private byte[] nextCells;
+    private final byte[] shownCells; // What the viewers were last sent, while showingUncommittedPattern is set.
+    private boolean showingUncommittedPattern;
+    private int id; // Given by the floor registry the floor is placed in. 0 while it isn't in one.
+
+    /**
+     * Creates an empty floor. Nothing is written until the floor is changed.
+     * @param centerX The x coordinate of the center of the floor
+     * @param y The y coordinate of the floor
+     * @param centerZ The z coordinate of the center of the floor
+     * @param xRad The x radius of the floor. The floor is 2*xRad+1 blocks long on the x axis.
+     * @param zRad The z radius of the floor. The floor is 2*zRad+1 blocks long on the z axis.
+     * @param materials The materials the floor can be made of. At most 127.
+     */
+    public FloorGrid(int centerX, int y, int centerZ, int xRad, int zRad, Material[] materials) {
+        if (materials.length > Byte.MAX_VALUE) throw new IllegalArgumentException("A floor can have at most " + Byte.MAX_VALUE + " materials");
+
+        this.centerX = centerX;
+        this.y = y;
+        this.centerZ = centerZ;
+        this.xRad = xRad;
+        this.zRad = zRad;
+        this.depth = 2 * zRad + 1;
+        this.materials = materials;
+        this.stateIds = new int[materials.length];
+        for (int i = 0; i < materials.length; i++) {
+            stateIds[i] = BlockPalette.get().idOf(materials[i]);
+        }
+
+        this.cells = new byte[(2 * xRad + 1) * depth];
+        this.nextCells = new byte[cells.length];
+        this.shownCells = new byte[cells.length];
+        Arrays.fill(cells, EMPTY);
+    }
+
+    /**
+     * Gives every block of the floor a random material, and writes only the blocks whose material changed.
+     * @param random The random to pick the materials with
+     * @param writer Where to write the changed blocks
+     * @param priority The priority of the writes
+     * @return How many blocks were written
+     */
+    public int randomize(Random random, BlockWriter writer, WritePriority priority) {
+        for (int i = 0; i < nextCells.length; i++) {
+            nextCells[i] = cells[i] == DISOWNED ? DISOWNED : (byte) random.nextInt(materials.length);
+        }
+        return apply(writer, priority);
+    }
+
+    /**
+     * Gives every block of the floor a random material, but only for the players that see the floor. The world isn't changed.
+     * Only the blocks whose material changed since the last pattern the players got are sent.
+     * @param random The random to pick the materials with
+     * @param viewerWriter Where to write the changed blocks, like a {@link me.stavgordeev.plugin.Blocks.ClientBlockBatch}
+     * @return How many blocks changed
+     */
+    public int randomizeForViewers(Random random, BlockWriter viewerWriter) {
+        if (!showingUncommittedPattern) {
+            System.arraycopy(cells, 0, shownCells, 0, cells.length);
+            showingUncommittedPattern = true;
+        }
+
+        int changed = 0;
+        for (int i = 0; i < shownCells.length; i++) {
+            if (shownCells[i] == DISOWNED) continue;
+
+            byte next = (byte) random.nextInt(materials.length);
+            if (next == shownCells[i]) continue;
+
+            shownCells[i] = next;
+            viewerWriter.setBlock(centerX + i / depth - xRad, y, centerZ + i % depth - zRad, stateIds[next], WritePriority.COSMETIC);
+            changed++;
+        }
+        return changed;
+    }
+
+    /**
+     * Writes the pattern the players were last shown to the world, so the world matches what they see. Only the blocks that differ are written.
+     * Does nothing if the players weren't shown a pattern of their own.
+     * @return How many blocks were written
+     */
+    public int commitShownPattern(BlockWriter writer, WritePriority priority) {
+        if (!showingUncommittedPattern) return 0;
+
+        System.arraycopy(shownCells, 0, nextCells, 0, shownCells.length);
+        showingUncommittedPattern = false;
+        return apply(writer, priority);
+    }
+
+    /**
+     * Removes every block of the floor that isn't made of the material to keep.
+     * @param materialIndexToKeep The index of the material to keep
+     * @return How many blocks were removed
+     */
+    public int removeAllExcept(int materialIndexToKeep, BlockWriter writer, WritePriority priority) {
+        for (int i = 0; i < cells.length; i++) {
+            nextCells[i] = cells[i] == materialIndexToKeep || cells[i] == DISOWNED ? cells[i] : EMPTY;
+        }
+        return apply(writer, priority);
+    }
+
+    /**
+     * Removes every block of the floor that is made of a material.
+     * @param materialIndex The index of the material to remove
+     * @return How many blocks were removed
+     */
+    public int removeAllOf(int materialIndex, BlockWriter writer, WritePriority priority) {
+        for (int i = 0; i < cells.length; i++) {
+            nextCells[i] = cells[i] == materialIndex ? EMPTY : cells[i];
+        }
+        return apply(writer, priority);
+    }
+
+    /**
+     * @return The index of a material in the floor's materials, or -1 if the floor can't be made of it
+     */
+    public int indexOf(Material material) {
+        for (int i = 0; i < materials.length; i++) {
+            if (materials[i] == material) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The material of the floor at an offset from its center, or air if the block is empty or belongs to another floor
+     */
+    public Material getMaterialAt(int xOffset, int zOffset) {
+        byte cell = cells[(xOffset + xRad) * depth + (zOffset + zRad)];
+        return cell < 0 ? Material.AIR : materials[cell];
+    }
+
+    /**
+     * @return Whether the floor has a block at an offset from its center, as far as the server knows. Blocks it gave up to another floor don't count.
+     */
+    public boolean isSolidAt(int xOffset, int zOffset) {
+        return cells[(xOffset + xRad) * depth + (zOffset + zRad)] >= 0;
+    }
+
+    /**
+     * @return Whether the floor still owns the block at an offset from its center
+     */
+    public boolean owns(int xOffset, int zOffset) {
+        return cells[(xOffset + xRad) * depth + (zOffset + zRad)] != DISOWNED;
+    }
+
+    /**
+     * Gives up the block at an offset from its center, because a newer floor was placed over it. The floor won't write to it anymore.
+     */
+    void disown(int xOffset, int zOffset) {
+        int index = (xOffset + xRad) * depth + (zOffset + zRad);
+        cells[index] = DISOWNED;
+        shownCells[index] = DISOWNED;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
+    public int getCenterX() {
+        return centerX;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getCenterZ() {
+        return centerZ;
+    }
+
+    public int getXRad() {
+        return xRad;
+    }
+
+    public int getZRad() {
+        return zRad;
+    }
+
+    /**
+     * Writes the blocks that differ between the next pattern and the current one, then makes the next pattern the current one.
+     */
+    private int apply(BlockWriter writer, WritePriority priority) {
+        int written = 0;
+        for (int i = 0; i < cells.length; i++) {
+            byte next = nextCells[i];
+            if (next == cells[i]) continue;
+
+            int x = centerX + i / depth - xRad;
+            int z = centerZ + i % depth - zRad;
+            writer.setBlock(x, y, z, next == EMPTY ? BlockPalette.AIR : stateIds[next], priority);
+            written++;
+        }
+
+        byte[] previous = cells;
+        cells = nextCells;
+        nextCells = previous;
+        return written;
+    }
+}
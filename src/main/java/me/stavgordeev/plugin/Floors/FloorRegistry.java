@@ -0,0 +1,194 @@
+package me.stavgordeev.plugin.Floors;
+
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps track of the floors that are currently standing in an arena, and which part of the arena each of them covers.
+ * <p>
+ * The arena is a square around its origin. Coverage is kept in a 2D bitmap with one bit per column of the arena, so checking
+ * whether a floor would overlap another one is a couple of word operations per row. Next to it is a map of which floor owns each column,
+ * so a floor that is cleaned up only clears the blocks that are still its own.
+ */
+public class FloorRegistry {
+    private static final short FREE = 0;
+
+    private final int originX, originZ;
+    private final int radius;
+    private final int size; // The side length of the arena in blocks.
+    private final int wordsPerRow;
+    private final long[] occupied; // One bit per column. Row = x, bit = z.
+    private final short[] owners; // The id of the floor that owns each column, or FREE.
+    private final List<FloorGrid> floorsById = new ArrayList<>(); // Index = id - 1. Released ids hold null until reused.
+    private final List<FloorGrid> activeFloors = new ArrayList<>();
+
+    /**
+     * @param originX The x coordinate of the center of the arena
+     * @param originZ The z coordinate of the center of the arena
+     * @param radius How far the arena reaches from its center. Floors must fit completely inside it.
+     */
+    public FloorRegistry(int originX, int originZ, int radius) {
+        this.originX = originX;
+        this.originZ = originZ;
+        this.radius = radius;
+        this.size = 2 * radius + 1;
+        this.wordsPerRow = (size + 63) >>> 6;
+        this.occupied = new long[size * wordsPerRow];
+        this.owners = new short[size * size];
+    }
+
+    /**
+     * @return Whether a floor with this center and size would fit inside the arena
+     */
+    public boolean isInBounds(int centerX, int centerZ, int xRad, int zRad) {
+        return centerX - xRad >= originX - radius && centerX + xRad <= originX + radius
+                && centerZ - zRad >= originZ - radius && centerZ + zRad <= originZ + radius;
+    }
+
+    /**
+     * @return Whether a floor with this center and size would fit inside the arena without overlapping any standing floor
+     */
+    public boolean fits(int centerX, int centerZ, int xRad, int zRad) {
+        if (!isInBounds(centerX, centerZ, xRad, zRad)) return false;
+
+        int fromRow = centerX - xRad - originX + radius, toRow = centerX + xRad - originX + radius;
+        int fromColumn = centerZ - zRad - originZ + radius, toColumn = centerZ + zRad - originZ + radius;
+        for (int row = fromRow; row <= toRow; row++) {
+            int rowStart = row * wordsPerRow;
+            for (int word = fromColumn >>> 6; word <= toColumn >>> 6; word++) {
+                int low = Math.max(fromColumn, word << 6) & 63;
+                int high = Math.min(toColumn, (word << 6) + 63) & 63;
+                long mask = (-1L >>> (63 - high)) & (-1L << low);
+                if ((occupied[rowStart + word] & mask) != 0) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a floor and registers it as standing. The floor has to be in bounds, but it may overlap older floors.
+     * Blocks of an older floor at the same height that end up under the new floor are taken over by the new floor.
+     * @return The new floor
+     */
+    public FloorGrid place(int centerX, int y, int centerZ, int xRad, int zRad, Material[] materials) {
+        if (!isInBounds(centerX, centerZ, xRad, zRad)) {
+            throw new IllegalArgumentException("Floor at " + centerX + "," + centerZ + " with radius " + xRad + "," + zRad + " is outside of the arena");
+        }
+
+        FloorGrid floor = new FloorGrid(centerX, y, centerZ, xRad, zRad, materials);
+        floor.setId(allocateId(floor));
+        activeFloors.add(floor);
+
+        for (int xOffset = -xRad; xOffset <= xRad; xOffset++) {
+            int row = centerX + xOffset - originX + radius;
+            for (int zOffset = -zRad; zOffset <= zRad; zOffset++) {
+                int column = centerZ + zOffset - originZ + radius;
+                int cell = row * size + column;
+
+                short previousOwner = owners[cell];
+                if (previousOwner != FREE) {
+                    FloorGrid previousFloor = floorsById.get(previousOwner - 1);
+                    // Only a floor at the same height actually shares the block with the new one.
+                    if (previousFloor.getY() == y) {
+                        previousFloor.disown(centerX + xOffset - previousFloor.getCenterX(), centerZ + zOffset - previousFloor.getCenterZ());
+                    }
+                }
+
+                owners[cell] = (short) floor.getId();
+                occupied[row * wordsPerRow + (column >>> 6)] |= 1L << (column & 63);
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * Removes a floor from the registry. The columns it still owns go back to the newest other standing floor that still has a block there
+     * (an older floor at another height, for example), and become free if there is none. Doesn't touch any blocks.
+     */
+    public void release(FloorGrid floor) {
+        int id = floor.getId();
+        if (id == 0 || floorsById.get(id - 1) != floor) return;
+
+        floorsById.set(id - 1, null);
+        activeFloors.remove(floor);
+        floor.setId(0);
+
+        for (int xOffset = -floor.getXRad(); xOffset <= floor.getXRad(); xOffset++) {
+            int x = floor.getCenterX() + xOffset;
+            int row = x - originX + radius;
+            for (int zOffset = -floor.getZRad(); zOffset <= floor.getZRad(); zOffset++) {
+                int z = floor.getCenterZ() + zOffset;
+                int column = z - originZ + radius;
+                int cell = row * size + column;
+                if (owners[cell] != id) continue;
+
+                FloorGrid nextOwner = newestFloorOwning(x, z);
+                if (nextOwner != null) {
+                    owners[cell] = (short) nextOwner.getId(); // Still covered, so the occupied bit stays
+                } else {
+                    owners[cell] = FREE;
+                    occupied[row * wordsPerRow + (column >>> 6)] &= ~(1L << (column & 63));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The floor that owns a column of the arena, or null if no floor covers it. A single array lookup.
+     */
+    public FloorGrid floorAt(int x, int z) {
+        int row = x - originX + radius, column = z - originZ + radius;
+        if (row < 0 || column < 0 || row >= size || column >= size) return null;
+
+        short owner = owners[row * size + column];
+        return owner == FREE ? null : floorsById.get(owner - 1);
+    }
+
+    /**
+     * @return The floors that are currently standing, oldest first
+     */
+    public List<FloorGrid> getActiveFloors() {
+        return Collections.unmodifiableList(activeFloors);
+    }
+
+    /**
+     * Forgets every floor. Used when the game ends.
+     */
+    public void clear() {
+        for (FloorGrid floor : activeFloors) {
+            floor.setId(0);
+        }
+        activeFloors.clear();
+        floorsById.clear();
+        Arrays.fill(occupied, 0);
+        Arrays.fill(owners, FREE);
+    }
+
+    /**
+     * @return The newest standing floor that still owns its block in a column, or null if none does. Floors are few, so they are simply gone through.
+     */
+    private FloorGrid newestFloorOwning(int x, int z) {
+        for (int i = activeFloors.size() - 1; i >= 0; i--) {
+            FloorGrid floor = activeFloors.get(i);
+            int xOffset = x - floor.getCenterX(), zOffset = z - floor.getCenterZ();
+            if (Math.abs(xOffset) <= floor.getXRad() && Math.abs(zOffset) <= floor.getZRad() && floor.owns(xOffset, zOffset)) return floor;
+        }
+        return null;
+    }
+
+    private int allocateId(FloorGrid floor) {
+        int freeIndex = floorsById.indexOf(null);
+        if (freeIndex >= 0) {
+            floorsById.set(freeIndex, floor);
+            return freeIndex + 1;
+        }
+        if (floorsById.size() >= Short.MAX_VALUE) throw new IllegalStateException("Too many floors in one arena");
+
+        floorsById.add(floor);
+        return floorsById.size();
+    }
+}
@@ -0,0 +1,42 @@
+package me.stavgordeev.plugin.GameLoop;
+
+/**
+ * Something a game wants to happen at a certain tick. Events are plain objects owned by a {@link TimingWheel}, which pools and reuses them,
+ * so a handler must not keep a reference to an event after it returns.
+ * <p>
+ * What the event means is up to the game: the type says what to do, the subject and the two int arguments say what to do it with.
+ */
+public final class GameEvent {
+    int type;
+    Object subject;
+    int arg0, arg1;
+    long deadline;
+    int generation;
+    GameEvent next; // The next event in the same wheel slot, or in the pool.
+
+    GameEvent() {
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public Object getSubject() {
+        return subject;
+    }
+
+    public int getArg0() {
+        return arg0;
+    }
+
+    public int getArg1() {
+        return arg1;
+    }
+
+    /**
+     * @return The tick the event was scheduled for
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+}
@@ -0,0 +1,9 @@
+package me.stavgordeev.plugin.GameLoop;
+
+/**
+ * Handles the events of a {@link TimingWheel} once their tick comes.
+ */
+@FunctionalInterface
+public interface GameEventHandler {
+    void onGameEvent(GameEvent event);
+}
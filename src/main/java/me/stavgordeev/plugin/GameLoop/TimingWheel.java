@@ -0,0 +1,169 @@
+package me.stavgordeev.plugin.GameLoop;
+
+/**
+ * Schedules the events of one game by tick. Advanced once per tick by the game's loop, it runs every event whose tick has come.
+ * <p>
+ * The wheel is hierarchical: 4 levels of 64 slots each, where a slot of level n spans 64^n ticks. An event is put in the lowest level
+ * whose span reaches its deadline, and moves down a level every time the wheel passes the slot it's in, until it reaches level 0 and is run.
+ * Scheduling is O(1) and each tick costs O(1) plus the events that are due, no matter how many events are waiting.
+ * <p>
+ * Events are pooled, so a busy game doesn't create garbage for every timer. {@link #cancelAll()} is O(1) as well: it moves the wheel to a new generation,
+ * and events from older generations are dropped when the wheel reaches them.
+ * <p>
+ * Must only be used from the main thread.
+ */
+public final class TimingWheel {
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    // Longer delays could land in a top level slot the wheel already passed. 2^18 ticks is about 3.6 hours, more than any game needs.
+    private static final long MAX_DELAY = 1L << (SLOT_BITS * (LEVELS - 1));
+    private static final int MAX_POOLED_EVENTS = 1024;
+
+    private final GameEventHandler handler;
+    private final GameEvent[][] slots = new GameEvent[LEVELS][SLOTS];
+    private long currentTick;
+    private int generation;
+    private int pendingEvents;
+
+    private GameEvent pool;
+    private int pooledEvents;
+
+    /**
+     * @param handler What runs the events once they are due
+     */
+    public TimingWheel(GameEventHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Schedules an event.
+     * @param delay In how many ticks the event should run. Events are never run on the tick they were scheduled on, so the least delay is 1.
+     *              Delays longer than about 3.6 hours are cut down to that.
+     * @param type What the event is, as the game defines it
+     * @param subject What the event is about. May be null.
+     * @param arg0 An argument for the event
+     * @param arg1 Another argument for the event
+     */
+    public void schedule(long delay, int type, Object subject, int arg0, int arg1) {
+        GameEvent event = obtain();
+        event.type = type;
+        event.subject = subject;
+        event.arg0 = arg0;
+        event.arg1 = arg1;
+        event.generation = generation;
+        event.deadline = currentTick + Math.clamp(delay, 1, MAX_DELAY);
+        insert(event);
+        pendingEvents++;
+    }
+
+    public void schedule(long delay, int type) {
+        schedule(delay, type, null, 0, 0);
+    }
+
+    public void schedule(long delay, int type, Object subject) {
+        schedule(delay, type, subject, 0, 0);
+    }
+
+    /**
+     * Moves the wheel one tick ahead and runs every event that is due on it.
+     */
+    public void advance() {
+        currentTick++;
+
+        // Pull the events of every higher level slot the wheel just reached down to the levels below it, highest level first.
+        int highestLevel = 0;
+        while (highestLevel + 1 < LEVELS && (currentTick & ((1L << (SLOT_BITS * (highestLevel + 1))) - 1)) == 0) {
+            highestLevel++;
+        }
+        for (int level = highestLevel; level > 0; level--) {
+            cascade(level, (int) (currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+        }
+
+        int slot = (int) currentTick & SLOT_MASK;
+        GameEvent event = slots[0][slot];
+        slots[0][slot] = null;
+        while (event != null) {
+            GameEvent next = event.next;
+            // An event that is run can cancel everything, so the generation is checked for each event.
+            if (event.generation == generation) {
+                pendingEvents--;
+                handler.onGameEvent(event);
+            }
+            recycle(event);
+            event = next;
+        }
+    }
+
+    /**
+     * Cancels every scheduled event. Events that are scheduled afterward run as usual.
+     */
+    public void cancelAll() {
+        generation++;
+        pendingEvents = 0;
+    }
+
+    /**
+     * @return How many events are waiting to run
+     */
+    public int getPendingEvents() {
+        return pendingEvents;
+    }
+
+    /**
+     * @return How many ticks the wheel has advanced
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    //------------------------------- Internals --------------------------------//
+
+    private void insert(GameEvent event) {
+        // The lowest level where the deadline and the current tick share everything above the level's slot bits.
+        int level = 0;
+        while (level < LEVELS - 1 && (event.deadline >>> (SLOT_BITS * (level + 1))) != (currentTick >>> (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+
+        int slot = (int) (event.deadline >>> (SLOT_BITS * level)) & SLOT_MASK;
+        event.next = slots[level][slot];
+        slots[level][slot] = event;
+    }
+
+    private void cascade(int level, int slot) {
+        GameEvent event = slots[level][slot];
+        slots[level][slot] = null;
+        while (event != null) {
+            GameEvent next = event.next;
+            if (event.generation == generation) {
+                insert(event);
+            } else {
+                recycle(event);
+            }
+            event = next;
+        }
+    }
+
+    private GameEvent obtain() {
+        GameEvent event = pool;
+        if (event == null) return new GameEvent();
+
+        pool = event.next;
+        pooledEvents--;
+        event.next = null;
+        return event;
+    }
+
+    private void recycle(GameEvent event) {
+        event.subject = null;
+        if (pooledEvents >= MAX_POOLED_EVENTS) {
+            event.next = null;
+            return;
+        }
+        event.next = pool;
+        pool = event;
+        pooledEvents++;
+    }
+}
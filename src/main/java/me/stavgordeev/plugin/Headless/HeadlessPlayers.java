@@ -0,0 +1,66 @@
+package me.stavgordeev.plugin.Headless;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Players for headless matches. A headless player has no client: it has a name, a UUID and a location, and everything else it's asked to do does nothing.
+ * Anything it's asked for that is an interface (its inventory for example) is another object that does nothing, so game code can call through it freely.
+ */
+public final class HeadlessPlayers {
+    private HeadlessPlayers() {
+    }
+
+    /**
+     * @param name The name of the player. The player's UUID is derived from it, so the same name always gives the same player.
+     * @return A new headless player
+     */
+    public static Player create(String name) {
+        UUID uuid = UUID.nameUUIDFromBytes(("HeadlessPlayer:" + name).getBytes(StandardCharsets.UTF_8));
+        Location[] location = new Location[1];
+
+        InvocationHandler handler = (proxy, method, args) -> switch (method.getName()) {
+            case "getUniqueId" -> uuid;
+            case "getName" -> name;
+            case "isOnline" -> true;
+            case "getLocation" -> location[0] == null ? null : location[0].clone();
+            case "teleport" -> {
+                if (args[0] instanceof Location target) location[0] = target.clone();
+                yield true;
+            }
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> uuid.hashCode();
+            case "toString" -> "HeadlessPlayer[" + name + "]";
+            default -> nothing(method.getReturnType());
+        };
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class}, handler);
+    }
+
+    /**
+     * @return What a method that does nothing returns: zero, false, null, or an object of the interface that does nothing
+     */
+    private static Object nothing(Class<?> type) {
+        if (type == void.class) return null;
+        if (type == boolean.class) return false;
+        if (type == char.class) return '\0';
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0f;
+        if (type == double.class) return 0d;
+        if (!type.isInterface() || type.isSealed()) return null;
+
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "toString" -> "Headless" + type.getSimpleName();
+            default -> nothing(method.getReturnType());
+        });
+    }
+}
@@ -0,0 +1,145 @@
+package me.stavgordeev.plugin.Headless;
+
+import me.stavgordeev.plugin.Arenas.ArenaAllocator;
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Minigames.MinigameRegistry;
+import me.stavgordeev.plugin.Platform.GameServer;
+import net.kyori.adventure.text.Component;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * A server that runs the games in a plain JVM: a {@link HeadlessWorld} for the blocks, a {@link VirtualClock} for the ticks,
+ * and the same block write queue, arena allocator and game registry a real server uses.
+ * <p>
+ * Nothing moves on its own. Every call to {@link #tick()} is one server tick: the games' loops run, then the block write queue is flushed
+ * under the configured tick budget, just like at the end of a real tick. Ticks run as fast as the game logic allows, so a long match takes seconds.
+ * <p>
+ * Headless players have no client (see {@link HeadlessPlayers}), so the games can't send them anything, and the players never count as online.
+ * Must only be used from one thread.
+ */
+public final class HeadlessServer implements GameServer {
+    private static final int ARENA_SPACING = 128;
+    private static final int ARENA_ORIGIN_Y = 150;
+    // How far the world reaches around each arena's origin. Enough for the largest game area (50) and the floors above it.
+    private static final int ARENA_REACH = 64;
+
+    private final ConfigurationSection config;
+    private final Logger logger = Logger.getLogger("MinigamePlugin-Headless");
+    // One thread stands in for the server's async pool. It's a daemon, so it never keeps the JVM alive.
+    private final ExecutorService asyncExecutor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "MinigamePlugin-Headless-Async");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final VirtualClock clock = new VirtualClock(asyncExecutor);
+    private final BlockWriteQueue blockWriteQueue;
+    private final HeadlessWorld world;
+    private final ArenaAllocator arenaAllocator;
+    private final MinigameRegistry minigameRegistry = new MinigameRegistry();
+    private final File journalsFolder;
+
+    /**
+     * Creates a server with a row of arenas. The plugin's default config.yml is used if it's on the classpath.
+     * @param maxArenas How many games can run at the same time
+     * @param journalsFolder Where the games save their arena journals
+     */
+    public HeadlessServer(int maxArenas, File journalsFolder) {
+        this.config = loadDefaultConfig();
+        this.journalsFolder = journalsFolder;
+        this.blockWriteQueue = new BlockWriteQueue(BlockPalette.get(), config.getDouble("block-writes.tick-budget-ms", 10));
+        this.world = new HeadlessWorld("headless", blockWriteQueue,
+                -ARENA_REACH, ARENA_ORIGIN_Y - ARENA_REACH, -ARENA_REACH,
+                (maxArenas - 1) * ARENA_SPACING + ARENA_REACH, ARENA_ORIGIN_Y + ARENA_REACH, ARENA_REACH);
+        this.arenaAllocator = new ArenaAllocator(world, 0, ARENA_ORIGIN_Y, 0, ARENA_SPACING, maxArenas, maxArenas);
+    }
+
+    /**
+     * Runs one server tick.
+     */
+    public void tick() {
+        clock.tick();
+        blockWriteQueue.flush(Long.MAX_VALUE); // Capped by the configured tick budget, like the end of a real tick.
+    }
+
+    /**
+     * Runs a number of server ticks.
+     */
+    public void runTicks(long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            tick();
+        }
+    }
+
+    public VirtualClock getVirtualClock() {
+        return clock;
+    }
+
+    public HeadlessWorld getWorld() {
+        return world;
+    }
+
+    //------------------------------- GameServer --------------------------------//
+
+    @Override
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    @Override
+    public BlockWriteQueue getBlockWriteQueue() {
+        return blockWriteQueue;
+    }
+
+    @Override
+    public MinigameRegistry getMinigameRegistry() {
+        return minigameRegistry;
+    }
+
+    @Override
+    public ArenaAllocator getArenaAllocator() {
+        return arenaAllocator;
+    }
+
+    @Override
+    public Player getPlayer(UUID uuid) {
+        return null; // Headless players have no client to send anything to.
+    }
+
+    @Override
+    public void broadcast(Component message) {
+        // Nobody to read it.
+    }
+
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+
+    @Override
+    public File getJournalsFolder() {
+        return journalsFolder;
+    }
+
+    @Override
+    public ConfigurationSection getConfig() {
+        return config;
+    }
+
+    private static ConfigurationSection loadDefaultConfig() {
+        InputStream defaults = HeadlessServer.class.getResourceAsStream("/config.yml");
+        if (defaults == null) return new YamlConfiguration();
+        return YamlConfiguration.loadConfiguration(new InputStreamReader(defaults, StandardCharsets.UTF_8));
+    }
+}
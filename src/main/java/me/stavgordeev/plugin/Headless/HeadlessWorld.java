@@ -0,0 +1,127 @@
+package me.stavgordeev.plugin.Headless;
+
+import me.stavgordeev.plugin.Blocks.AreaClearer;
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockSink;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.DataStructures.BlockPos;
+import me.stavgordeev.plugin.DataStructures.LongArrayList;
+import me.stavgordeev.plugin.Platform.GameWorld;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A world held in memory: a box of block states in one int array, indexed by position. Everything outside the box is air and can't be written to.
+ * <p>
+ * Nobody watches a headless world, so it has no players, and there's no time or weather to change.
+ */
+public final class HeadlessWorld implements GameWorld, BlockSink {
+    private final String name;
+    private final BlockWriteQueue blockWriteQueue;
+    private final int minX, minY, minZ;
+    private final int maxX, maxY, maxZ;
+    private final int sizeY, sizeZ;
+    private final int[] states;
+
+    /**
+     * Creates a world of air. The bounds are inclusive.
+     * @param name The name of the world
+     * @param blockWriteQueue The queue writes to the world go through
+     */
+    public HeadlessWorld(String name, BlockWriteQueue blockWriteQueue, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        long volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (volume <= 0 || volume > Integer.MAX_VALUE) throw new IllegalArgumentException("A headless world must hold between 1 and 2^31-1 blocks");
+
+        this.name = name;
+        this.blockWriteQueue = blockWriteQueue;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.sizeY = maxY - minY + 1;
+        this.sizeZ = maxZ - minZ + 1;
+        this.states = new int[(int) volume];
+    }
+
+    //------------------------------- BlockSink --------------------------------//
+
+    @Override
+    public int getBlockState(int x, int y, int z) {
+        return contains(x, y, z) ? states[indexOf(x, y, z)] : BlockPalette.AIR;
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, int stateId) {
+        if (contains(x, y, z)) states[indexOf(x, y, z)] = stateId;
+    }
+
+    //------------------------------- GameWorld --------------------------------//
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public World getBukkitWorld() {
+        return null;
+    }
+
+    @Override
+    public BlockSink getBlockSink() {
+        return this;
+    }
+
+    /**
+     * Finds every block in the cuboid right away, and queues them as air the same way a server's clear does.
+     * The future completes once the queue has written them, which is during a later flush.
+     */
+    @Override
+    public CompletableFuture<Integer> clear(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        LongArrayList positionsToClear = new LongArrayList(1024);
+        for (int x = Math.max(minX, this.minX); x <= Math.min(maxX, this.maxX); x++) {
+            for (int y = Math.max(minY, this.minY); y <= Math.min(maxY, this.maxY); y++) {
+                for (int z = Math.max(minZ, this.minZ); z <= Math.min(maxZ, this.maxZ); z++) {
+                    if (states[indexOf(x, y, z)] != BlockPalette.AIR) positionsToClear.add(BlockPos.pack(x, y, z));
+                }
+            }
+        }
+
+        AreaClearer.queueClear(blockWriteQueue, this, positionsToClear, minX, minY, minZ, maxX, maxY, maxZ);
+        return blockWriteQueue.barrier().thenApply(ignored -> positionsToClear.size());
+    }
+
+    @Override
+    public Collection<? extends Player> getPlayers() {
+        return List.of();
+    }
+
+    @Override
+    public void makeClearDay() {
+    }
+
+    /**
+     * @return How many blocks of the world aren't air. Reads the whole world, so it's for checking results, not for every tick.
+     */
+    public int countNonAirBlocks() {
+        int count = 0;
+        for (int state : states) {
+            if (state != BlockPalette.AIR) count++;
+        }
+        return count;
+    }
+
+    private boolean contains(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    private int indexOf(int x, int y, int z) {
+        return ((x - minX) * sizeY + (y - minY)) * sizeZ + (z - minZ);
+    }
+}
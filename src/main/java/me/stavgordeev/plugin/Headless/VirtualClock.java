@@ -0,0 +1,81 @@
+package me.stavgordeev.plugin.Headless;
+
+import me.stavgordeev.plugin.Platform.GameClock;
+import me.stavgordeev.plugin.Platform.GameTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A clock that only moves when {@link #tick()} is called, so a headless server can run ticks as fast as the game logic allows.
+ * <p>
+ * Async tasks are handed to an executor, the way a server hands them to its async pool. They are off the clock, so saving a file doesn't slow the ticks down.
+ */
+public final class VirtualClock implements GameClock {
+    private final List<RepeatingTask> repeatingTasks = new ArrayList<>();
+    private final Executor asyncExecutor;
+    private long currentTick;
+
+    /**
+     * @param asyncExecutor Where async tasks run. Using a direct executor runs them on the ticking thread, which makes a run deterministic but slower.
+     */
+    public VirtualClock(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    @Override
+    public GameTask runEveryTick(Runnable task) {
+        RepeatingTask repeatingTask = new RepeatingTask(task);
+        repeatingTasks.add(repeatingTask);
+        return repeatingTask;
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        asyncExecutor.execute(task);
+    }
+
+    /**
+     * Moves the clock one tick ahead and runs every repeating task.
+     * Tasks that are scheduled while the tick runs start on the next tick.
+     */
+    public void tick() {
+        currentTick++;
+
+        int taskCount = repeatingTasks.size();
+        for (int i = 0; i < taskCount; i++) {
+            RepeatingTask task = repeatingTasks.get(i);
+            if (!task.cancelled) task.task.run();
+        }
+        repeatingTasks.removeIf(task -> task.cancelled);
+    }
+
+    /**
+     * @return How many repeating tasks are scheduled, cancelled ones that weren't dropped yet included
+     */
+    public int getRepeatingTaskCount() {
+        return repeatingTasks.size();
+    }
+
+    /**
+     * @return How many ticks the clock has moved
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    private static final class RepeatingTask implements GameTask {
+        private final Runnable task;
+        private boolean cancelled;
+
+        RepeatingTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package me.stavgordeev.plugin.Listeners;
+
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Metrics.Histogram;
+import me.stavgordeev.plugin.Metrics.Metrics;
+import me.stavgordeev.plugin.Minigames.BlueprintBazaar;
+import me.stavgordeev.plugin.Minigames.MinigameSkeleton;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+
+/**
+ * Tells BlueprintBazaar about every block that is placed or broken in its arena, so the replica plots are scored as they are built
+ * and the center plot knows which blocks were changed by hand.
+ * Runs last and skips cancelled events, so only the changes that actually happen are counted.
+ * Only registered while games run (see {@link GameEventRouter}).
+ */
+public class BlockChangeListener implements Listener {
+    private final GameEventRouter router;
+    private final BlockPalette palette;
+    private final Histogram handlerTime = Metrics.histogram("listener_seconds", "listener", "block_change");
+
+    public BlockChangeListener(GameEventRouter router, BlockPalette palette) {
+        this.router = router;
+        this.palette = palette;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        long start = System.nanoTime();
+        Block block = event.getBlockPlaced();
+        MinigameSkeleton game = router.gameAt(block.getWorld(), block.getX(), block.getZ());
+        if (game instanceof BlueprintBazaar blueprintBazaar) {
+            blueprintBazaar.onBlockChanged(event.getPlayer(), block.getX(), block.getY(), block.getZ(), palette.idOf(block.getBlockData()));
+        }
+        handlerTime.record(System.nanoTime() - start);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        long start = System.nanoTime();
+        Block block = event.getBlock();
+        MinigameSkeleton game = router.gameAt(block.getWorld(), block.getX(), block.getZ());
+        if (game instanceof BlueprintBazaar blueprintBazaar) {
+            blueprintBazaar.onBlockChanged(event.getPlayer(), block.getX(), block.getY(), block.getZ(), BlockPalette.AIR);
+        }
+        handlerTime.record(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,27 @@
+package me.stavgordeev.plugin.Listeners;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Metrics.Histogram;
+import me.stavgordeev.plugin.Metrics.Metrics;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+/**
+ * Flushes the block write queue at the end of every tick, using whatever is left of the tick as the budget (capped by the configured budget).
+ */
+public class BlockWriteFlushListener implements Listener {
+    private final BlockWriteQueue blockWriteQueue;
+    private final Histogram flushTime = Metrics.histogram("block_flush_seconds");
+
+    public BlockWriteFlushListener(BlockWriteQueue blockWriteQueue) {
+        this.blockWriteQueue = blockWriteQueue;
+    }
+
+    @EventHandler
+    public void onTickEnd(ServerTickEndEvent event) {
+        long start = System.nanoTime();
+        blockWriteQueue.flush(Math.max(event.getTimeRemaining(), 0));
+        flushTime.record(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,82 @@
+package me.stavgordeev.plugin.Listeners;
+
+import me.stavgordeev.plugin.Arenas.ArenaRegionIndex;
+import me.stavgordeev.plugin.Minigames.MinigameRegistry;
+import me.stavgordeev.plugin.Minigames.MinigameSkeleton;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns the listeners that only matter while games run, and finds the game an event happened in.
+ * <p>
+ * The game listeners are registered with the server when the first game starts, and unregistered once the last one ends,
+ * so an idle server doesn't run them at all. While they are registered, they hand every event to the game of the arena it happened in,
+ * which is one lookup in a chunk index of the running arenas, so the cost per event doesn't grow with the number of arenas.
+ * <p>
+ * Main thread only.
+ */
+public class GameEventRouter implements MinigameRegistry.GameLifecycleListener {
+    private final Plugin plugin;
+    private final ArenaRegionIndex<MinigameSkeleton> arenas;
+    private final List<Listener> gameListeners = new ArrayList<>();
+    private boolean listening;
+
+    /**
+     * @param plugin The plugin the game listeners are registered for
+     * @param arenaSpacing The distance between two neighbouring arenas
+     */
+    public GameEventRouter(Plugin plugin, int arenaSpacing) {
+        this.plugin = plugin;
+        this.arenas = new ArenaRegionIndex<>(arenaSpacing);
+    }
+
+    /**
+     * Adds a listener that is only registered while games run. Should be added before any game starts.
+     */
+    public void addGameListener(Listener listener) {
+        gameListeners.add(listener);
+        if (listening) plugin.getServer().getPluginManager().registerEvents(listener, plugin);
+    }
+
+    /**
+     * @return The game that runs in the arena a location is in, or null if no game runs there
+     */
+    public MinigameSkeleton gameAt(Location location) {
+        return arenas.ownerAt(location);
+    }
+
+    /**
+     * @return The game that runs in the arena a block is in, or null if no game runs there
+     */
+    public MinigameSkeleton gameAt(World world, int blockX, int blockZ) {
+        return arenas.ownerAt(world, blockX, blockZ);
+    }
+
+    @Override
+    public void onGameStarted(MinigameSkeleton game) {
+        arenas.put(game.getArena(), game);
+        if (listening) return;
+
+        listening = true;
+        for (Listener listener : gameListeners) {
+            plugin.getServer().getPluginManager().registerEvents(listener, plugin);
+        }
+    }
+
+    @Override
+    public void onGameEnded(MinigameSkeleton game) {
+        arenas.remove(game.getArena());
+        if (!listening || arenas.size() > 0) return;
+
+        listening = false;
+        for (Listener listener : gameListeners) {
+            HandlerList.unregisterAll(listener);
+        }
+    }
+}
@@ -2,21 +2,38 @@
 package me.stavgordeev.plugin.Listeners;
 
 import me.stavgordeev.plugin.Minigames.DiscoMayhem;
+import me.stavgordeev.plugin.Metrics.Histogram;
+import me.stavgordeev.plugin.Metrics.Metrics;
+import me.stavgordeev.plugin.Minigames.MinigameRegistry;
+import me.stavgordeev.plugin.Minigames.MinigameSkeleton;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.PlayerDeathEvent;
 
+/**
+ * Only registered while games run (see {@link GameEventRouter}). The game is found by player rather than by arena,
+ * since a player may die after falling or being knocked out of the arena.
+ */
 public class PlayerDeathListener implements Listener {
-    private final DiscoMayhem discoMayhem;
+    private final MinigameRegistry minigameRegistry;
+    private final Histogram handlerTime = Metrics.histogram("listener_seconds", "listener", "player_death");
 
-    public PlayerDeathListener(DiscoMayhem discoMayhem) {
-        this.discoMayhem = discoMayhem;
+    public PlayerDeathListener(MinigameRegistry minigameRegistry) {
+        this.minigameRegistry = minigameRegistry;
     }
 
+    /**
+     * A player that dies in DiscoMayhem is out of the game. The game ends once its last player is out.
+     */
     @EventHandler
     public void onPlayerDeath(PlayerDeathEvent event) {
-        if (discoMayhem.isPlayerInGame(event.getEntity())) {
-            discoMayhem.endGame(event.getEntity());
+        long start = System.nanoTime();
+        Player player = event.getEntity();
+        MinigameSkeleton game = minigameRegistry.getGameOf(player);
+        if (game instanceof DiscoMayhem discoMayhem) {
+            discoMayhem.removePlayer(player);
         }
+        handlerTime.record(System.nanoTime() - start);
     }
-}
\ No newline at end of file
+}
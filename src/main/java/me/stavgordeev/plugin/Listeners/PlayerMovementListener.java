@@ -1,43 +1,74 @@
 package me.stavgordeev.plugin.Listeners;
 
+import me.stavgordeev.plugin.DataStructures.LongIntHashMap;
+import me.stavgordeev.plugin.Minigames.MinigameSkeleton;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.potion.PotionEffect;
 import org.bukkit.potion.PotionEffectType;
 
+/**
+ * Gives players in a game a stronger jump boost every time they jump.
+ * <p>
+ * PlayerMoveEvent fires for every player many times a tick, head rotations included, so moves that can't be a jump are dropped
+ * before anything is looked up, and players that aren't in the game of the arena they are in are dropped right after.
+ * The state of each player is kept in a primitive map keyed by entity id, so it costs no allocation per move.
+ */
 public class PlayerMovementListener implements Listener {
-    int jumpBoostLevel = 1;
-    boolean isOnGround = true;
-    Location playerLocationWhenJumped = null;
+    private static final int FIRST_JUMP_BOOST_LEVEL = 1;
+    private static final int MISSING = -1;
+
+    private final GameEventRouter router;
+    // Entity id -> jump boost level << 1 | on ground bit. Players that never jumped aren't in the map.
+    private final LongIntHashMap states = new LongIntHashMap(64, MISSING);
+
+    public PlayerMovementListener(GameEventRouter router) {
+        this.router = router;
+    }
 
     @EventHandler
     public void onPlayerMove(PlayerMoveEvent event) {
-        Player player = event.getPlayer();
-
         Location from = event.getFrom();
         Location to = event.getTo();
-        //player.sendMessage("You moved from " + from + " to " + to);
-        if (isJumping(player, from, to) && !isOnGround) {
+        // Jumping and landing both change Y. Everything else (looking around, walking on flat ground) is dropped here.
+        if (to.getY() == from.getY()) return;
+
+        Player player = event.getPlayer();
+        if (player.isFlying()) return;
+        MinigameSkeleton game = router.gameAt(to);
+        if (game == null || !game.isPlayerInGame(player)) return;
+        // Only moves that start on solid ground count, either as a jump or as a landing.
+        if (!from.getWorld().getBlockAt(from.getBlockX(), from.getBlockY() - 1, from.getBlockZ()).getType().isSolid()) return;
+
+        int entityId = player.getEntityId();
+        int state = states.get(entityId);
+        int jumpBoostLevel = state == MISSING ? FIRST_JUMP_BOOST_LEVEL : state >>> 1;
+        if (to.getY() > from.getY()) {
             player.sendMessage("You jumped! Effect level: " + jumpBoostLevel);
-            player.addPotionEffect(new PotionEffect(PotionEffectType.JUMP_BOOST,Integer.MAX_VALUE, jumpBoostLevel));
-            jumpBoostLevel++;
+            player.addPotionEffect(new PotionEffect(PotionEffectType.JUMP_BOOST, Integer.MAX_VALUE, jumpBoostLevel));
+            states.put(entityId, (jumpBoostLevel + 1) << 1); // In the air
         } else {
-            //System.out.println("You are not jumping");
+            states.put(entityId, jumpBoostLevel << 1 | 1); // Landed
         }
     }
 
-    public boolean isJumping(Player player,Location from, Location to) {
-        if (to.getY() > from.getY() && !player.isFlying() && from.getBlock().getRelative(0, -1, 0).getType().isSolid()) {
-            isOnGround = false;
-            return true;
-        } else if (to.getY() < from.getY() && !player.isFlying() && from.getBlock().getRelative(0, -1, 0).getType().isSolid()) {
-            isOnGround = true;
-            return false;
-        }
-        return false;
+    /**
+     * Forgets players that leave, so the map only holds players that are online.
+     */
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        states.remove(event.getPlayer().getEntityId());
     }
 
+    /**
+     * @return Whether the player is on the ground, as far as this listener knows. Players it hasn't seen jump are on the ground.
+     */
+    public boolean isOnGround(Player player) {
+        int state = states.get(player.getEntityId());
+        return state == MISSING || (state & 1) != 0;
+    }
 }
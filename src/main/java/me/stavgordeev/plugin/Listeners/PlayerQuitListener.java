@@ -0,0 +1,32 @@
+package me.stavgordeev.plugin.Listeners;
+
+import me.stavgordeev.plugin.Metrics.Histogram;
+import me.stavgordeev.plugin.Metrics.Metrics;
+import me.stavgordeev.plugin.Minigames.MinigameRegistry;
+import me.stavgordeev.plugin.Minigames.MinigameSkeleton;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Takes players that leave the server out of their game, so games don't wait for players that are gone.
+ * Only registered while games run (see {@link GameEventRouter}). The game is found by player rather than by arena, since a player may leave from anywhere.
+ */
+public class PlayerQuitListener implements Listener {
+    private final MinigameRegistry minigameRegistry;
+    private final Histogram handlerTime = Metrics.histogram("listener_seconds", "listener", "player_quit");
+
+    public PlayerQuitListener(MinigameRegistry minigameRegistry) {
+        this.minigameRegistry = minigameRegistry;
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        long start = System.nanoTime();
+        MinigameSkeleton game = minigameRegistry.getGameOf(event.getPlayer());
+        if (game != null) {
+            game.removePlayer(event.getPlayer());
+        }
+        handlerTime.record(System.nanoTime() - start);
+    }
+}
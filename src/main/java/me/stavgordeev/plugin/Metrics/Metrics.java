@@ -0,0 +1,142 @@
+package me.stavgordeev.plugin.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The plugin's counters, gauges and latency histograms, by name and labels.
+ * <p>
+ * Looking a metric up builds its key, so hot code should look its metrics up once and keep them.
+ * Recording into a metric is cheap and thread safe. Latencies are recorded in nanoseconds and exported in seconds.
+ */
+public final class Metrics {
+    private static final String PREFIX = "mg_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @param name The name of the histogram, ending with _seconds
+     * @param labels Label names and values, in pairs
+     * @return The histogram of this name and labels, created if it didn't exist
+     */
+    public static Histogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(key(name, labels), ignored -> new Histogram());
+    }
+
+    /**
+     * @param name The name of the counter, ending with _total
+     * @param labels Label names and values, in pairs
+     * @return The counter of this name and labels, created if it didn't exist
+     */
+    public static LongAdder counter(String name, String... labels) {
+        return counters.computeIfAbsent(key(name, labels), ignored -> new LongAdder());
+    }
+
+    /**
+     * Registers a value that is read whenever the metrics are shown or exported. Replaces a gauge of the same name and labels.
+     * @param name The name of the gauge
+     * @param supplier Gives the current value. Called on the main thread, whenever the metrics are shown or exported.
+     * @param labels Label names and values, in pairs
+     */
+    public static void gauge(String name, LongSupplier supplier, String... labels) {
+        gauges.put(key(name, labels), supplier);
+    }
+
+    /**
+     * Must be called on the main thread, since it reads the gauges.
+     * @return Every metric in the Prometheus text format
+     */
+    public static String toPrometheusText() {
+        StringBuilder text = new StringBuilder();
+        String lastName = null;
+
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            lastName = appendType(text, counter.getKey(), "counter", lastName);
+            text.append(counter.getKey()).append(' ').append(counter.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> gauge : new TreeMap<>(gauges).entrySet()) {
+            lastName = appendType(text, gauge.getKey(), "gauge", lastName);
+            text.append(gauge.getKey()).append(' ').append(gauge.getValue().getAsLong()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            String key = entry.getKey();
+            Histogram histogram = entry.getValue();
+            lastName = appendType(text, key, "summary", lastName);
+
+            String name = nameOf(key);
+            String labels = key.substring(name.length());
+            for (double quantile : QUANTILES) {
+                text.append(name).append(withLabel(labels, "quantile", Double.toString(quantile))).append(' ')
+                        .append(seconds(histogram.valueAtQuantile(quantile))).append('\n');
+            }
+            text.append(name).append("_sum").append(labels).append(' ').append(seconds(histogram.getSum())).append('\n');
+            text.append(name).append("_count").append(labels).append(' ').append(histogram.getCount()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return One line per metric, for reading in chat. Latencies are shown in milliseconds.
+     */
+    public static List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            lines.add(String.format(Locale.ROOT, "%s n=%d p50=%.3fms p99=%.3fms max=%.3fms", entry.getKey().substring(PREFIX.length()), histogram.getCount(),
+                    histogram.valueAtQuantile(0.5) / 1e6, histogram.valueAtQuantile(0.99) / 1e6, histogram.getMax() / 1e6));
+        }
+        for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+            lines.add(counter.getKey().substring(PREFIX.length()) + " " + counter.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> gauge : new TreeMap<>(gauges).entrySet()) {
+            lines.add(gauge.getKey().substring(PREFIX.length()) + " " + gauge.getValue().getAsLong());
+        }
+        return lines;
+    }
+
+    //------------------------------- Internals --------------------------------//
+
+    private static String key(String name, String... labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must come in name and value pairs");
+        if (labels.length == 0) return PREFIX + name;
+
+        StringBuilder key = new StringBuilder(PREFIX).append(name).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) key.append(',');
+            key.append(labels[i]).append("=\"").append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return key.append('}').toString();
+    }
+
+    private static String nameOf(String key) {
+        int labelsStart = key.indexOf('{');
+        return labelsStart < 0 ? key : key.substring(0, labelsStart);
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    private static String appendType(StringBuilder text, String key, String type, String lastName) {
+        String name = nameOf(key);
+        if (!name.equals(lastName)) text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return name;
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+}
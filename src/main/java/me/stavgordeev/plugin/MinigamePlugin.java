@@ -1,24 +1,67 @@
 package me.stavgordeev.plugin;
 
+import me.stavgordeev.plugin.Arenas.ArenaAllocator;
+import me.stavgordeev.plugin.Blocks.ArenaJournal;
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Listeners.BlockChangeListener;
+import me.stavgordeev.plugin.Listeners.BlockWriteFlushListener;
+import me.stavgordeev.plugin.Listeners.GameEventRouter;
 import me.stavgordeev.plugin.Listeners.PlayerDeathListener;
-import me.stavgordeev.plugin.Minigames.BlueprintBazaar;
-import me.stavgordeev.plugin.Minigames.DiscoMayhem;
+import me.stavgordeev.plugin.Listeners.PlayerQuitListener;
+import me.stavgordeev.plugin.Metrics.Metrics;
+import me.stavgordeev.plugin.Minigames.MinigameRegistry;
+import me.stavgordeev.plugin.Platform.BukkitGameServer;
+import me.stavgordeev.plugin.Platform.BukkitGameWorld;
+import me.stavgordeev.plugin.Platform.GameServer;
+import me.stavgordeev.plugin.Schematics.ClipboardCache;
+import me.stavgordeev.plugin.Schematics.SchematicCatalog;
+import me.stavgordeev.plugin.Schematics.SchematicWarmUp;
+import me.stavgordeev.plugin.Tracing.Trace;
+import me.stavgordeev.plugin.Tracing.TraceLevel;
 import me.stavgordeev.plugin.commands.BlueprintBazaarCommands;
 import me.stavgordeev.plugin.commands.DiscoMayhemCommands;
 import me.stavgordeev.plugin.commands.MiscCommands;
+import me.stavgordeev.plugin.commands.StatsCommand;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public class MinigamePlugin extends JavaPlugin {
 
     public static Plugin plugin;
+    private static BlockWriteQueue blockWriteQueue;
+    private static ArenaAllocator arenaAllocator;
+    private static MinigameRegistry minigameRegistry;
+    private static GameServer gameServer;
+    private static ClipboardCache clipboardCache;
+    private static SchematicCatalog schematicCatalog;
 
     @Override
     public void onEnable() {
         plugin = this; // Initialize the plugin reference
+        saveDefaultConfig();
+        setTraceLevel(getConfig().getString("tracing.level", "off"));
+
+        // Every block the minigames place goes through this queue. It is flushed at the end of each tick under a time budget.
+        blockWriteQueue = new BlockWriteQueue(BlockPalette.get(), getConfig().getDouble("block-writes.tick-budget-ms", 10));
+        getServer().getPluginManager().registerEvents(new BlockWriteFlushListener(blockWriteQueue), this);
+
+        // Arena journals that are still around belong to games that never ended properly (a crash for example). Put those arenas back.
+        journalsFolder = new File(getDataFolder(), "journals");
+        journalsFolder.mkdirs();
+        ArenaJournal.recoverAll(journalsFolder, blockWriteQueue, getLogger());
 
         // Create the BlueprintBazaarBuilds folder if it doesn't exist
         schematicsFolder = new File(getDataFolder(), "BlueprintBazaarBuilds");
@@ -28,21 +71,135 @@ public class MinigamePlugin extends JavaPlugin {
         } else {
             getLogger().info("BlueprintBazaarBuilds folder already exists.");
         }
+        clipboardCache = new ClipboardCache(getConfig().getLong("schematics.cache-size-mb", 64) * 1024 * 1024);
+        // The catalog reads its manifest and watches the folder in the background, so new builds show up without a restart.
+        schematicCatalog = new SchematicCatalog(schematicsFolder, new File(getDataFolder(), "builds-manifest.yml"), clipboardCache, getLogger());
+        CompletableFuture<Void> catalogReady = schematicCatalog.start();
+        if (getConfig().getBoolean("schematics.warm-up-on-enable", true)) {
+            // Runs in the background, so the plugin is enabled just as fast. Rounds that start after it's done don't read any files.
+            // Started once the catalog is ready, so the builds it had to index are already in the cache.
+            catalogReady.whenComplete((ignored, error) -> SchematicWarmUp.start(schematicsFolder, clipboardCache, getLogger()));
+        }
 
-        DiscoMayhem discoMayhem = new DiscoMayhem(this);
-        BlueprintBazaar blueprintBazaar = new BlueprintBazaar(this);
+        // Every game gets its own arena, so many games can run at the same time. The games themselves are created by the commands that start them.
+        arenaAllocator = createArenaAllocator(getConfig());
+        minigameRegistry = new MinigameRegistry();
+        gameServer = new BukkitGameServer(this);
 
-        // Register the event listeners
-        getServer().getPluginManager().registerEvents(new PlayerDeathListener(discoMayhem), this);
+        // The game listeners are only registered while a game runs, and find the game of an event by the arena it happened in.
+        GameEventRouter gameEventRouter = new GameEventRouter(this, arenaAllocator.getSpacing());
+        minigameRegistry.addLifecycleListener(gameEventRouter);
+        gameEventRouter.addGameListener(new PlayerDeathListener(minigameRegistry));
+        gameEventRouter.addGameListener(new PlayerQuitListener(minigameRegistry));
+        gameEventRouter.addGameListener(new BlockChangeListener(gameEventRouter, blockWriteQueue.getPalette()));
 
-        Objects.requireNonNull(getCommand("mg_disco_mayhem")).setExecutor(new DiscoMayhemCommands(discoMayhem)); // Register the command relating to the minigame DiscoMayhem.
-        Objects.requireNonNull(getCommand("mg_blueprint_bazaar")).setExecutor(new BlueprintBazaarCommands(blueprintBazaar)); // Register the command relating to the minigame BlueprintBazaar.
+        Objects.requireNonNull(getCommand("mg_disco_mayhem")).setExecutor(new DiscoMayhemCommands(this)); // Register the command relating to the minigame DiscoMayhem.
+        Objects.requireNonNull(getCommand("mg_blueprint_bazaar")).setExecutor(new BlueprintBazaarCommands(this)); // Register the command relating to the minigame BlueprintBazaar.
         Objects.requireNonNull(getCommand("misc")).setExecutor(new MiscCommands(this));
+        Objects.requireNonNull(getCommand("mg_stats")).setExecutor(new StatsCommand());
+
+        registerGauges();
+        long exportIntervalTicks = getConfig().getLong("metrics.export-interval-seconds", 30) * 20;
+        if (exportIntervalTicks > 0) {
+            getServer().getScheduler().runTaskTimer(this, this::exportMetrics, exportIntervalTicks, exportIntervalTicks);
+        }
     }
 
     @Override
     public void onDisable() {
-        // Plugin shutdown logic
+        // Save the journals of running games, so their arenas get restored on the next start, then apply whatever is still queued.
+        ArenaJournal.saveAllNow();
+        BuildLoader.shutdown();
+        if (schematicCatalog != null) schematicCatalog.close();
+        if (blockWriteQueue != null) blockWriteQueue.flushAll();
+    }
+
+    /**
+     * @return The queue every block write of the minigames goes through
+     */
+    public static BlockWriteQueue getBlockWriteQueue() {
+        return blockWriteQueue;
+    }
+
+    /**
+     * @return The allocator that hands out the arenas games run in
+     */
+    public static ArenaAllocator getArenaAllocator() {
+        return arenaAllocator;
+    }
+
+    /**
+     * @return The registry of the games that are running
+     */
+    public static MinigameRegistry getMinigameRegistry() {
+        return minigameRegistry;
+    }
+
+    /**
+     * @return The cache of parsed schematics that builds are pasted from
+     */
+    public static ClipboardCache getClipboardCache() {
+        return clipboardCache;
+    }
+
+    /**
+     * @return The catalog of the builds in the builds folder
+     */
+    public static SchematicCatalog getSchematicCatalog() {
+        return schematicCatalog;
+    }
+
+    /**
+     * @return The server as the games see it
+     */
+    public static GameServer getGameServer() {
+        return gameServer;
+    }
+
+    private void registerGauges() {
+        Metrics.gauge("block_queue_pending_writes", () -> blockWriteQueue.getStats().pendingWrites());
+        Metrics.gauge("arenas_in_use", () -> arenaAllocator.getArenasInUse());
+        Metrics.gauge("games_running", () -> minigameRegistry.getRunningGames().size());
+        Metrics.gauge("players_in_games", () -> minigameRegistry.getParticipantCount());
+    }
+
+    /**
+     * Writes every metric to metrics.prom in the plugin's folder, in the Prometheus text format, so it can be picked up by a node exporter
+     * or just read. The text is built here and written on another thread. The file is replaced in one go, so it's never read half written.
+     */
+    private void exportMetrics() {
+        String text = Metrics.toPrometheusText();
+        Path file = getDataFolder().toPath().resolve("metrics.prom");
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            try {
+                Path temp = file.resolveSibling("metrics.prom.tmp");
+                Files.writeString(temp, text, StandardCharsets.UTF_8);
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                getLogger().warning("Failed to export the metrics: " + e.getMessage());
+            }
+        });
+    }
+
+    private void setTraceLevel(String level) {
+        try {
+            Trace.setLevel(TraceLevel.valueOf(level.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            getLogger().warning("Unknown trace level " + level + ". Tracing stays off.");
+        }
+    }
+
+    private ArenaAllocator createArenaAllocator(FileConfiguration config) {
+        String worldName = config.getString("arenas.world", "world");
+        World world = getServer().getWorld(worldName);
+        if (world == null) {
+            world = getServer().getWorlds().getFirst();
+            getLogger().warning("Arena world " + worldName + " is not loaded. Using " + world.getName() + " instead.");
+        }
+
+        return new ArenaAllocator(new BukkitGameWorld(world, blockWriteQueue),
+                config.getInt("arenas.origin-x", 0), config.getInt("arenas.origin-y", 150), config.getInt("arenas.origin-z", 0),
+                config.getInt("arenas.spacing", 128), config.getInt("arenas.columns", 8), config.getInt("arenas.max-arenas", 64));
     }
 
     private File schematicsFolder;
@@ -50,5 +207,10 @@ public class MinigamePlugin extends JavaPlugin {
         return schematicsFolder;
     }
 
+    private File journalsFolder;
+    public File getJournalsFolder() {
+        return journalsFolder;
+    }
+
 
 }
@@ -1,37 +1,60 @@
 package me.stavgordeev.plugin.Minigames;
 
+import me.stavgordeev.plugin.Arenas.Arena;
+import me.stavgordeev.plugin.Blocks.AreaClearer;
 import me.stavgordeev.plugin.BuildLoader;
 import me.stavgordeev.plugin.Constants.BlueprintBazaarConst;
+import me.stavgordeev.plugin.GameLoop.GameEvent;
 import me.stavgordeev.plugin.MinigamePlugin;
+import me.stavgordeev.plugin.Platform.BukkitGameServer;
+import me.stavgordeev.plugin.Platform.GameServer;
+import me.stavgordeev.plugin.Schematics.BuildScore;
+import me.stavgordeev.plugin.Schematics.GalleryPaste;
+import me.stavgordeev.plugin.Schematics.PlotState;
+import me.stavgordeev.plugin.Schematics.SchematicCatalog;
 import me.stavgordeev.plugin.Utils;
 import net.kyori.adventure.text.Component;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
-import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.util.Vector;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
 public class BlueprintBazaar extends MinigameSkeleton {
+    private static final int EVENT_PREPARE_NEW_BUILD = 0; // arg0 = how many builds were prepared so far
+    private static final int EVENT_END_ROUND = 1; // arg0 = how many builds were prepared before this round's
+    private static final int MIN_SHOWCASE_SPACING = 10; // The distance between two showcased builds, if they are all small enough for it
+    private static final int SHOWCASE_FLOOR_REACH = 9; // How far the floor of a showcased build reaches from its plot
 
-    private final File[] allSchematics; // The builds.
-    private ArrayList<File> availableSchematics; // The builds. when a build is chosen, it is removed from this list
+    private final SchematicCatalog catalog; // The builds.
+    private ArrayList<SchematicCatalog.BuildInfo> availableSchematics; // The builds. when a build is chosen, it is removed from this list
+    private final List<CompletableFuture<Integer>> loadingBuilds = new ArrayList<>(); // Builds that are still being loaded. Cancelled when the game ends.
+    private final PlotState centerPlot = new PlotState(); // What the builds left on the center build plot, so the next one only writes what differs.
+    private GalleryPaste gallery; // The showcase of all the builds, while it's being pasted
+    private GalleryArea galleryArea; // Where the showcased builds are, so they can be cleared. Null if nothing is showcased.
+    private final List<BuildScore> replicaScores = new ArrayList<>(); // How close each replica plot is to this round's build. Same order as REPLICA_PLOTS.
+    private int round; // Goes up every round, so a build that is read after its round is over is dropped
 
 
-    public BlueprintBazaar (Plugin plugin) {
-        super(plugin);
-        // Gets the schematics folder from the MinigamePlugin.java. This is where the builds are stored.
-        if (plugin instanceof MinigamePlugin) {
-            File schematicsFolder = ((MinigamePlugin) plugin).getSchematicsFolder();// The folder where the builds are stored
-            this.allSchematics = schematicsFolder.listFiles(); // Gets the builds from the folder
-        } else {
-        throw new IllegalArgumentException("Plugin must be an instance of MinigamePlugin");
+    /**
+     * The box the showcased builds and their floors are in. The bounds are inclusive.
+     */
+    private record GalleryArea(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+    }
+
+    public BlueprintBazaar (GameServer server, Arena arena) {
+        super(server, arena);
+        // The builds are pasted with WorldEdit, so this game needs a real server.
+        if (!(server instanceof BukkitGameServer)) {
+            throw new IllegalArgumentException("BlueprintBazaar can only run on a Bukkit server");
         }
+        // Gets the catalog of the builds from the MinigamePlugin.java. It keeps up with the builds folder on its own.
+        this.catalog = MinigamePlugin.getSchematicCatalog();
     }
 
     @Override
@@ -40,19 +63,63 @@ public class BlueprintBazaar extends MinigameSkeleton {
 
         initSchematics();// Initializes the availableSchematics list
 
-        new BukkitRunnable() {
-            int index = 0;
-
-            // This method is called every 2 seconds
-            public void run() {
-                if (index >= allSchematics.length) {
-                    cancel();
-                    return;
-                }
-                prepareNewBuild();
-                index++;
+        timingWheel.schedule(1, EVENT_PREPARE_NEW_BUILD, null, 0, 0);
+    }
+
+    @Override
+    protected void onGameEvent(GameEvent event) {
+        if (event.getType() == EVENT_PREPARE_NEW_BUILD) {
+            int index = event.getArg0();
+            if (availableSchematics.isEmpty()) return; // Every build was shown
+
+            prepareNewBuild();
+            timingWheel.schedule(BlueprintBazaarConst.ROUND_TICKS, EVENT_END_ROUND, null, index, 0);
+        } else if (event.getType() == EVENT_END_ROUND) {
+            endRound(event.getArg0());
+        }
+    }
+
+    /**
+     * Updates the score of the replica plot a block is on, if it's on one. Called for every block a player places or breaks in the arena.
+     * @param player The player that changed the block. Only the players of the game are scored.
+     * @param stateId The palette id of the block's new state
+     */
+    public void onBlockChanged(Player player, int x, int y, int z, int stateId) {
+        // Whoever changed it, the center plot no longer holds what the last paste left there.
+        centerPlot.forget(x, y, z);
+        if (!isPlayerInGame(player)) return;
+
+        for (BuildScore score : replicaScores) {
+            if (score.onBlockChanged(x, y, z, stateId)) {
+                player.sendActionBar(Component.text("Accuracy: " + Math.round(score.getAccuracy() * 100) + "%"));
+                return;
             }
-        }.runTaskTimer(plugin, 0L, 40L); // 40L = 2 seconds (20 ticks per second)
+        }
+    }
+
+    /**
+     * Ends a round: every replica plot is read again to settle its score, the scores are announced, and the plots are cleared for the next round.
+     * @param index How many builds were prepared before this round's
+     */
+    private void endRound(int index) {
+        List<BuildScore> scores = List.copyOf(replicaScores);
+        replicaScores.clear(); // Blocks placed from now on don't count
+        round++;
+
+        List<CompletableFuture<Integer>> rescans = new ArrayList<>();
+        for (BuildScore score : scores) {
+            rescans.add(score.rescan());
+        }
+        CompletableFuture.allOf(rescans.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+            if (!isGameRunning) return;
+            for (int i = 0; i < scores.size(); i++) {
+                // Only the players of this game get its scores, other arenas run their own rounds.
+                Component result = Component.text("Plot " + (i + 1) + ": " + Math.round(scores.get(i).getAccuracy() * 100) + "% accurate");
+                forEachParticipant(player -> player.sendMessage(result));
+                blockWrites.add(scores.get(i).clear());
+            }
+            timingWheel.schedule(BlueprintBazaarConst.TICKS_BETWEEN_ROUNDS, EVENT_PREPARE_NEW_BUILD, null, index + 1, 0);
+        });
     }
 
     @Override
@@ -73,6 +140,18 @@ public class BlueprintBazaar extends MinigameSkeleton {
     @Override
     public void endGame(Player player) {
         super.endGame(player);
+
+        // Builds that are still being loaded would keep writing into the area while it's cleared.
+        for (CompletableFuture<Integer> loadingBuild : new ArrayList<>(loadingBuilds)) {
+            loadingBuild.cancel(false);
+        }
+        loadingBuilds.clear();
+        abortShowcase();
+        replicaScores.clear();
+        round++;
+
+        // The builds aren't tracked, so the whole area is cleared before the arena is handed back. The showcase reaches past it, so it's cleared as well.
+        releaseArenaAfter(CompletableFuture.allOf(nukeArea(arena.getOrigin(), BlueprintBazaarConst.GAME_AREA_RADIUS), clearShowcase()));
     }
 
     @Override
@@ -81,73 +160,189 @@ public class BlueprintBazaar extends MinigameSkeleton {
     }
 
     @Override
-    public void nukeArea(Location center, int radius) {
-        Utils.nukeGameArea(center, radius);
+    public CompletableFuture<Integer> nukeArea(Location center, int radius) {
+        centerPlot.forget(); // The plot is cleared with everything else
+        return Utils.nukeGameArea(center, radius);
     }
 
 
     @Override
     public void prepareArea() {
-        nukeArea(BlueprintBazaarConst.GAME_START_LOCATION, BlueprintBazaarConst.GAME_AREA_RADIUS);
-        Utils.initFloor(20,20, Material.RED_WOOL, BlueprintBazaarConst.GAME_START_LOCATION,BlueprintBazaarConst.WORLD);
+        // The floor is placed only once the area is clear, otherwise the clearing would remove it.
+        nukeArea(arena.getOrigin(), BlueprintBazaarConst.GAME_AREA_RADIUS)
+                .thenRun(() -> Utils.initFloor(20,20, Material.RED_WOOL, arena.getOrigin(), arena.getWorld()));
     }
 
     @Override
     public void prepareGameSetting(Player player) {
-        player.teleport(BlueprintBazaarConst.GAME_START_LOCATION.clone().add(0, 8, 0)); // Teleport the player to the start location
+        player.teleport(arena.at(0, BlueprintBazaarConst.PLAYER_TP_HEIGHT, 0)); // Teleport the player to the start location
     }
 
     /**
-     * Initializes the availableSchematics list with all the builds in the schematics folder.
+     * Initializes the availableSchematics list with all the builds in the catalog.
      */
     public void initSchematics() {
         // Adds the builds to the availableSchematics list
-        assert allSchematics != null;
-        availableSchematics = new ArrayList<>(Arrays.asList(allSchematics));
+        availableSchematics = new ArrayList<>(catalog.getBuilds());
     }
 
     /**
-     * Loads all the builds in the schematics folder. The builds are loaded in a grid pattern.
+     * Loads the builds in the schematics folder, a page at a time. The builds are loaded in a grid pattern that starts at the center build plot,
+     * and a page holds as many builds as fit between it and the edge of the arena's cell, so the showcase never reaches into a neighbouring arena.
+     * The builds are pasted a few at a time in the background (see {@link GalleryPaste}), and the players are shown how far along it is.
+     * The builds of the page that was showcased before are cleared first.
+     * @param page The page to showcase, from 1
      */
-    public void loadAllSchematics() {
-        int index = 0;
-        // Load all the builds in the schematics folder
+    public void loadAllSchematics(int page) {
+        if (gallery != null && !gallery.isDone()) {
+            forEachParticipant(player -> player.sendMessage(Component.text("The builds are already being showcased.")));
+            return;
+        }
+
+        List<SchematicCatalog.BuildInfo> builds = catalog.getBuilds();
+        Location centerBuildPlot = arena.at(BlueprintBazaarConst.CENTER_BUILD_PLOT);
+        // The catalog knows how big the builds are, so big builds get room without opening their files.
+        int largestFootprint = catalog.getLargestFootprint();
+        int spacing = Math.max(MIN_SHOWCASE_SPACING, largestFootprint + 2);
+        int reach = Math.max(SHOWCASE_FLOOR_REACH, largestFootprint); // How far a build or its floor may reach from its plot
+        int tallest = 0;
+        for (SchematicCatalog.BuildInfo build : builds) {
+            tallest = Math.max(tallest, build.height());
+        }
+
+        // The arena owns the cell of the arena grid around its origin. Every plot keeps its reach away from the far edges of the cell.
+        int arenaSpacing = server.getArenaAllocator().getSpacing();
+        int columns = (arena.getOriginX() + arenaSpacing / 2 - 1 - reach - centerBuildPlot.getBlockX()) / spacing + 1;
+        int rows = (arena.getOriginZ() + arenaSpacing / 2 - 1 - reach - centerBuildPlot.getBlockZ()) / spacing + 1;
+        if (columns <= 0 || rows <= 0) {
+            forEachParticipant(player -> player.sendMessage(Component.text("The builds are too big to be showcased in this arena.")));
+            return;
+        }
+        int buildsPerPage = columns * rows;
+        int pages = Math.max(1, (builds.size() + buildsPerPage - 1) / buildsPerPage);
+        if (page < 1 || page > pages) {
+            forEachParticipant(player -> player.sendMessage(Component.text("There " + (pages == 1 ? "is only 1 page" : "are only " + pages + " pages") + " of builds.")));
+            return;
+        }
+
+        List<GalleryPaste.Plot> plots = new ArrayList<>();
         // Load the schematic relative to the center build plot. The x and z coordinates are Modified in a way that makes the builds appear in a grid.
-        for (File schematic : allSchematics) {
+        int first = (page - 1) * buildsPerPage;
+        for (int index = 0; index < buildsPerPage && first + index < builds.size(); index++) {
             // Calculate the x, y, and z coordinates for the build
-            int curX = (int) BlueprintBazaarConst.CENTER_BUILD_PLOT.x()+(10*(index%6)),
-                curY = (int) (BlueprintBazaarConst.CENTER_BUILD_PLOT.y()),
-                curZ = (int) (BlueprintBazaarConst.CENTER_BUILD_PLOT.z() + 10 * (index/6));
-
-            // Initialize the floor for this build
-            Utils.initFloor(6,6, Material.RED_WOOL,
-                    new Location(BlueprintBazaarConst.WORLD, curX-3, curY-2, curZ),BlueprintBazaarConst.WORLD);
-            // Load the schematic
-            BuildLoader.loadSchematic(schematic, BlueprintBazaarConst.WORLD, curX, curY, curZ);
-
-            // Increment the index for the position of the next build
-            index++;
+            int curX = centerBuildPlot.getBlockX() + spacing * (index % columns),
+                curY = centerBuildPlot.getBlockY(),
+                curZ = centerBuildPlot.getBlockZ() + spacing * (index / columns);
+            plots.add(new GalleryPaste.Plot(catalog.fileOf(builds.get(first + index)), curX, curY, curZ));
         }
+        if (pages > 1) forEachParticipant(player -> player.sendMessage(Component.text("Showcasing page " + page + "/" + pages + " of the builds.")));
+
+        // The page that was showcased before is cleared first, so the builds don't mix.
+        CompletableFuture<Integer> cleared = clearShowcase();
+        galleryArea = new GalleryArea(
+                centerBuildPlot.getBlockX() - reach, centerBuildPlot.getBlockY() - Math.max(2, tallest), centerBuildPlot.getBlockZ() - reach,
+                centerBuildPlot.getBlockX() + spacing * (columns - 1) + reach, centerBuildPlot.getBlockY() + tallest + reach,
+                centerBuildPlot.getBlockZ() + spacing * (rows - 1) + reach);
+
+        // Build 0 of the gallery goes on the center plot, and the others may reach into it.
+        centerPlot.forget();
+        // Only the chunks a build reaches are loaded for it, so they stay in this arena's cell as well.
+        GalleryPaste thisGallery = new GalleryPaste(plots, arena.getWorld(), reach,
+                // Initialize the floor for this build
+                plot -> Utils.initFloor(6,6, Material.RED_WOOL,
+                        new Location(arena.getWorld(), plot.x()-3, plot.y()-2, plot.z()),arena.getWorld()),
+                progress -> forEachParticipant(player -> player.sendActionBar(Component.text(
+                        "Showcasing builds: " + progress.getFinishedBuilds() + "/" + progress.getTotalBuilds()))));
+        gallery = thisGallery;
+        cleared.whenComplete((ignored, clearError) -> {
+            if (!isGameRunning || thisGallery.isDone()) return; // Ended or aborted while the previous page was being cleared
+            thisGallery.start().whenComplete((written, error) -> {
+                centerPlot.forget(); // A build that was pasted on the center plot while the gallery was being pasted may have been written over
+                if (error != null) return; // Aborted
+                blockWrites.add(written);
+                forEachParticipant(player -> player.sendMessage(Component.text("All builds are showcased!" +
+                        (thisGallery.getFailedBuilds() > 0 ? " " + thisGallery.getFailedBuilds() + " couldn't be loaded." : ""))));
+            });
+        });
+    }
+
+    /**
+     * Stops showcasing the builds, if they are being showcased. The builds that are already in stay.
+     */
+    public void abortShowcase() {
+        if (gallery != null) gallery.cancel();
+    }
+
+    /**
+     * Clears the builds that were showcased, wherever they reached.
+     * @return A future that completes on the main thread once they are cleared
+     */
+    private CompletableFuture<Integer> clearShowcase() {
+        GalleryArea area = galleryArea;
+        galleryArea = null;
+        if (area == null) return CompletableFuture.completedFuture(0);
+
+        centerPlot.forget(); // The center plot is part of the showcase
+        return AreaClearer.clear(arena.getWorld(), area.minX(), area.minY(), area.minZ(), area.maxX(), area.maxY(), area.maxZ());
     }
 
     public void prepareNewBuild() {
         if (availableSchematics.isEmpty()) {
             // Handle the case where there are no available schematics
-            plugin.getLogger().severe("No available schematics to choose from.");
+            server.getLogger().severe("No available schematics to choose from.");
             return;
         }
 
 
         // Choose a random build from the schematics folder and delete it from the list
         Random getARandomBuild = new Random();
-        File chosenBuild = availableSchematics.remove(getARandomBuild.nextInt(availableSchematics.size()));
+        SchematicCatalog.BuildInfo chosenBuild = availableSchematics.remove(getARandomBuild.nextInt(availableSchematics.size()));
 
         // Create the new build
-        createNewBuild(chosenBuild, BlueprintBazaarConst.CENTER_BUILD_PLOT);
+        createNewBuild(catalog.fileOf(chosenBuild), arena.at(BlueprintBazaarConst.CENTER_BUILD_PLOT));
+        scoreReplicasOf(chosenBuild, arena.at(BlueprintBazaarConst.CENTER_BUILD_PLOT));
+    }
+
+    /**
+     * Reads the build into memory, and starts scoring the replica plots against it once it's read.
+     * @param location Where the build is pasted. The replica plots are at the same offsets from it as REPLICA_PLOTS are from CENTER_BUILD_PLOT.
+     */
+    private void scoreReplicasOf(SchematicCatalog.BuildInfo build, Location location) {
+        int thisRound = round;
+        BuildLoader.loadTarget(catalog.fileOf(build), (int) location.x(), (int) location.y(), (int) location.z())
+                .thenAccept(target -> {
+                    if (!isGameRunning || round != thisRound) return; // The round is already over
+                    for (Vector plot : BlueprintBazaarConst.REPLICA_PLOTS) {
+                        int offsetX = (int) (plot.getX() - BlueprintBazaarConst.CENTER_BUILD_PLOT.getX());
+                        int offsetY = (int) (plot.getY() - BlueprintBazaarConst.CENTER_BUILD_PLOT.getY());
+                        int offsetZ = (int) (plot.getZ() - BlueprintBazaarConst.CENTER_BUILD_PLOT.getZ());
+                        // Keep wide builds from overlapping the center plot.
+                        int minDistance = build.footprint() + 2;
+                        if (offsetX != 0 && Math.abs(offsetX) < minDistance) offsetX = Integer.signum(offsetX) * minDistance;
+                        replicaScores.add(new BuildScore(target, arena.getWorld(), offsetX, offsetY, offsetZ));
+                    }
+                    forEachParticipant(player -> player.sendMessage(Component.text("Copy the build! You have " + BlueprintBazaarConst.ROUND_TICKS / 20 + " seconds.")));
+                });
     }
 
     private void createNewBuild(File chosenBuild, Location location) {
-        Bukkit.getServer().broadcast(Component.text("New building created!"));
-        BuildLoader.loadSchematic(chosenBuild, BlueprintBazaarConst.WORLD, (int) location.x(), (int) location.y(), (int) location.z());
+        // Every build goes on the center plot, so only the blocks that differ from the build before it are written.
+        loadBuild(chosenBuild, (int) location.x(), (int) location.y(), (int) location.z(), centerPlot)
+                .thenRun(() -> forEachParticipant(player -> player.sendMessage(Component.text("New building created!"))));
+    }
+
+    /**
+     * Loads a build in the background. The build is tracked until it's in the world, so it can be cancelled if the game ends first.
+     * @param plot What the earlier builds left where this one goes, or null if nothing was pasted there
+     * @return A future that completes on the main thread once the build is in the world
+     */
+    private CompletableFuture<Integer> loadBuild(File schematic, int x, int y, int z, PlotState plot) {
+        CompletableFuture<Integer> loadingBuild = BuildLoader.loadSchematic(schematic, arena.getWorld(), x, y, z, plot);
+        loadingBuilds.add(loadingBuild);
+        // Failures are already logged by the loader.
+        return loadingBuild.whenComplete((pasted, error) -> {
+            loadingBuilds.remove(loadingBuild);
+            if (error == null) blockWrites.add(pasted);
+        });
     }
 }
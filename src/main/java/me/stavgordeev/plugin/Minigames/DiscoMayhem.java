@@ -1,22 +1,38 @@
 // src/main/java/me/stavgordeev/plugin/Minigame.java
 package me.stavgordeev.plugin.Minigames;
 
+import me.stavgordeev.plugin.Arenas.Arena;
+import me.stavgordeev.plugin.Blocks.ArenaJournal;
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.ClientBlockBatch;
+import me.stavgordeev.plugin.Blocks.WritePriority;
 import me.stavgordeev.plugin.Constants.DiscoMayhemConst;
+import me.stavgordeev.plugin.Floors.FloorGrid;
+import me.stavgordeev.plugin.Floors.FloorRegistry;
+import me.stavgordeev.plugin.GameLoop.GameEvent;
+import me.stavgordeev.plugin.Platform.GameServer;
+import me.stavgordeev.plugin.Platform.GameWorld;
+import me.stavgordeev.plugin.Tracing.Trace;
+import me.stavgordeev.plugin.Tracing.TraceEvent;
 import me.stavgordeev.plugin.Utils;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.title.Title;
 import org.bukkit.*;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.plugin.Plugin;
-import org.bukkit.scheduler.BukkitRunnable;
-import org.bukkit.scheduler.BukkitTask;
-import org.jetbrains.annotations.NotNull;
 import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextColor;
 
+import java.io.File;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class DiscoMayhem extends MinigameSkeleton {
     //-Game Modifiers that change as the game progresses to scale difficulty-//
@@ -26,17 +42,48 @@ public class DiscoMayhem extends MinigameSkeleton {
     private int lowerBound__stopChangingFloorInterval;
     //----------------------------------------------------------------------//
 
+    //------------------- Events of the game's timing wheel -----------------//
+    private static final int EVENT_ACTIVATE_GAME_EVENTS = 0;
+    private static final int EVENT_REMOVE_INIT_FLOOR = 1;
+    private static final int EVENT_SAVE_JOURNAL = 2;
+    private static final int EVENT_CHANGE_FLOOR = 3; // subject = floor, arg0 = interval, arg1 = stop interval
+    private static final int EVENT_SELECT_FLOOR_MATERIAL = 4; // subject = floor, arg0 = index of the chosen material
+    private static final int EVENT_REMOVE_REMAINING_FLOOR = 5; // subject = floor, arg0 = index of the kept material
+    private static final int EVENT_DECREASE_INTERVAL = 6;
+    private static final int EVENT_CHECK_ELIMINATIONS = 7; // Every tick
+    //----------------------------------------------------------------------//
+
+    // Every block the game places goes through the journal, so endGame() can put back exactly the blocks the game touched.
+    private ArenaJournal journal;
+    // The floors that are standing right now, and which part of the arena each of them covers.
+    private FloorRegistry floorRegistry;
+    // When set, the patterns in between are only sent to the players that watch a floor cycle. Only the last one before the material is chosen is written to the world.
+    private final boolean clientSideFloorCycling;
+    private final ClientBlockBatch viewerBatch = new ClientBlockBatch(BlockPalette.get());
+    // The players that are still in the game, packed at the front, so the per tick elimination check is one pass over an array.
+    private Player[] standingPlayers = new Player[8];
+    private int standingCount;
+    private boolean hadOpponents; // Whether more than one player was in the game at some point. Only then is the last one standing a winner.
+    private boolean initFloorStanding; // The glass floor the players start on isn't one of the registry's floors
+    private boolean areaReady; // Whether the area was cleared and the glass floor placed. Players are only teleported in once it is.
+    private final Location scratchLocation = new Location(null, 0, 0, 0); // Reused by the elimination check, so reading a player's location doesn't allocate
+    // Where every player of the game was and what game mode they were in before they joined, so they can be put back when they leave or the game ends.
+    private final Map<UUID, ReturnPoint> returnPoints = new HashMap<>();
+    private final List<ReturnPoint> spectators = new ArrayList<>(); // Eliminated players that watch the rest of the game
+
     /**
      * Constructor for the DiscoMayhem class.
      *
-     * @param plugin The plugin that the minigame is a part of
+     * @param server The server the game runs on
+     * @param arena The arena the game runs in
      */
-    public DiscoMayhem(Plugin plugin) {
-        super(plugin);
+    public DiscoMayhem(GameServer server, Arena arena) {
+        super(server, arena);
+        this.clientSideFloorCycling = server.getConfig().getBoolean("disco-mayhem.client-side-floor-cycling", true);
     }
 
     /**
-     * Starts the minigame. The player is teleported to the starting location and the game is initialized.
+     * Starts the minigame. The game is initialized, and the player is teleported to the starting location once the area is ready (see {@link #prepareArea()}).
      * @param player The player that starts the minigame
      * @throws InterruptedException
      */
@@ -46,14 +93,60 @@ public class DiscoMayhem extends MinigameSkeleton {
 
         initModifiers(); // Initialize the modifiers for the game
 
-        // Wait a lil before starting game events.
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                activateGameEvents();
-                cancel();
+        // The game events are only activated once the area is ready, see prepareArea().
+        timingWheel.schedule(1, EVENT_CHECK_ELIMINATIONS);
+    }
+
+    /**
+     * A player, and how to put them back the way they were before they joined.
+     */
+    private record ReturnPoint(Player player, GameMode gameMode, Location location) {
+    }
+
+    /**
+     * Adds a player to the game. Once the game is under way, a player can only join while there's a floor standing to put them on.
+     */
+    @Override
+    public boolean addPlayer(Player player) {
+        if (areaReady && findSpawnLocation() == null) return false;
+        if (!super.addPlayer(player)) return false;
+
+        // A spectator that joins again is still put back the way they were before they first joined.
+        ReturnPoint returnPoint = new ReturnPoint(player, player.getGameMode(), player.getLocation());
+        for (int i = 0; i < spectators.size(); i++) {
+            if (spectators.get(i).player().getUniqueId().equals(player.getUniqueId())) {
+                returnPoint = spectators.remove(i);
+                break;
             }
-        }.runTaskLater(plugin, 40);
+        }
+        returnPoints.putIfAbsent(player.getUniqueId(), returnPoint);
+
+        for (int i = 0; i < standingCount; i++) {
+            if (standingPlayers[i] == player) return true;
+        }
+        if (standingCount == standingPlayers.length) standingPlayers = Arrays.copyOf(standingPlayers, standingCount << 1);
+        standingPlayers[standingCount++] = player;
+        if (standingCount > 1) hadOpponents = true;
+        return true;
+    }
+
+    /**
+     * Takes a player out of the game, and puts them back in the game mode and at the place they were in before they joined.
+     * Eliminated players are only put back once the game ends.
+     */
+    @Override
+    public void removePlayer(Player player) {
+        for (int i = 0; i < standingCount; i++) {
+            if (standingPlayers[i].getUniqueId().equals(player.getUniqueId())) {
+                // Swap the last player into the gap. The order doesn't matter.
+                standingPlayers[i] = standingPlayers[--standingCount];
+                standingPlayers[standingCount] = null;
+                break;
+            }
+        }
+        ReturnPoint returnPoint = returnPoints.remove(player.getUniqueId());
+        if (returnPoint != null) restore(returnPoint);
+        super.removePlayer(player);
     }
 
     /**
@@ -76,7 +169,7 @@ public class DiscoMayhem extends MinigameSkeleton {
      * Game events range from taking care of changing floor logic to decreasing the interval for changing the floor.
      */
     public void activateGameEvents() {
-        preppingForAFloorCycle(DiscoMayhemConst.GAME_START_LOCATION);
+        preppingForAFloorCycle(arena.getOrigin());
         decreaseStartingIntervalForChangingFloorTimer();
     }
 
@@ -92,13 +185,12 @@ public class DiscoMayhem extends MinigameSkeleton {
 
     /**
      * Resumes the minigame. The game is resumed and the player is notified.
+     * The game's timers were frozen while it was paused, so every floor cycle continues from where it stopped.
      * @param player The player that resumes the minigame
      */
-    //fixme: some parts of the game are not resumed- the game is not resumed, but the floor is not changed nor old floors aren't removed.
     public void resumeGame(Player player) {
         super.resumeGame(player);
 
-        activateGameEvents(); // Resume the game events
         // Add more actions here
     }
 
@@ -108,16 +200,46 @@ public class DiscoMayhem extends MinigameSkeleton {
      */
     public void endGame(Player player) {
         super.endGame(player);
-
-        nukeArea(DiscoMayhemConst.GAME_START_LOCATION, 55);
+        Arrays.fill(standingPlayers, 0, standingCount, null);
+        standingCount = 0;
+        hadOpponents = false;
+        initFloorStanding = false;
+        areaReady = false;
+        restoreEveryone();
+
+        // Put back only the blocks the game placed, instead of clearing the whole area. The game's timers were already cancelled by super.endGame().
+        // The arena is handed back once it's restored.
+        releaseArenaAfter(journal != null ? journal.restore() : CompletableFuture.completedFuture(null));
+        journal = null;
+        if (floorRegistry != null) floorRegistry.clear();
 
         initModifiers(); // Reset the modifiers for the game
 
-        if (intervalTask != null && !intervalTask.isCancelled()) intervalTask.cancel(); // Cancel the task that decreases the interval for changing the floor as time goes on
-
         //player.teleport(MinigameConstants.GAME_START_LOCATION.clone().add(0, -70, 0));
     }
 
+    /**
+     * Puts every player of the game, the winner, the players still standing and the eliminated ones alike,
+     * back in the game mode and at the place they were in before they joined. Otherwise they'd fall once the arena is restored under them.
+     */
+    private void restoreEveryone() {
+        for (ReturnPoint returnPoint : returnPoints.values()) {
+            restore(returnPoint);
+        }
+        for (ReturnPoint spectator : spectators) {
+            restore(spectator);
+        }
+        returnPoints.clear();
+        spectators.clear();
+    }
+
+    private void restore(ReturnPoint returnPoint) {
+        Player player = returnPoint.player();
+        if (!player.isOnline()) return;
+        if (returnPoint.gameMode() != null) player.setGameMode(returnPoint.gameMode());
+        if (returnPoint.location() != null) player.teleport(returnPoint.location());
+    }
+
     /**
      * Initializes the modifiers that CAN be tempered with for the game.
      * Modifiers change throughout the game to scale difficulty.
@@ -134,34 +256,141 @@ public class DiscoMayhem extends MinigameSkeleton {
      * Removes all blocks in a radius around a location.
      * @param center The center of the area to nuke
      * @param radius The radius of the area
+     * @return A future that completes on the main thread once the area is clear
      **/
-    public void nukeArea(Location center, int radius) {
-        Utils.nukeGameArea(center, radius);
+    public CompletableFuture<Integer> nukeArea(Location center, int radius) {
+        return arena.getGameWorld().clearCube(center.getBlockX(), center.getBlockY(), center.getBlockZ(), radius);
     }
 
     @Override
     public void prepareArea() {
-        nukeArea(DiscoMayhemConst.GAME_START_LOCATION, 50); // Clear the area before starting the game
+        Location floorCenter = arena.at(0, DiscoMayhemConst.INIT_FLOOR_HEIGHT, 0); // The center of the floor
+
+        floorRegistry = new FloorRegistry(arena.getOriginX(), arena.getOriginZ(), DiscoMayhemConst.FloorLogic.ARENA_RADIUS);
+        // One journal file per arena, so the journals of games that run at the same time don't overwrite each other.
+        GameWorld world = arena.getGameWorld();
+        journal = new ArenaJournal(server.getBlockWriteQueue(), world.getBlockSink(), world.getName(),
+                new File(server.getJournalsFolder(), "disco_mayhem_" + arena.getSlot() + ".journal"), server.getLogger());
+        journal.countWritesIn(blockWrites);
+        ArenaJournal gameJournal = journal;
+        // Save the journal every few seconds, so a crash mid-game can be cleaned up on the next start.
+        timingWheel.schedule(DiscoMayhemConst.JOURNAL_SAVE_INTERVAL, EVENT_SAVE_JOURNAL);
+
+        // Clear the area before starting the game. The initial floor is only placed once the area is clear, otherwise the clearing would remove it.
+        nukeArea(arena.getOrigin(), DiscoMayhemConst.GAME_AREA_RADIUS).thenRun(() -> {
+            if (!isGameRunning || journal != gameJournal) return; // The game ended before the area was even clear.
+
+            Utils.initFloor(7, 7, Material.GLASS,floorCenter,gameJournal); // Initialize the floor under the player to glass
+            initFloorStanding = true;
+            areaReady = true;
+
+            // Only now is there something to stand on. Players that join from now on are teleported right away by prepareGameSetting().
+            Location startLocation = arena.at(0, DiscoMayhemConst.PLAYER_TP_HEIGHT, 0);
+            for (int i = 0; i < standingCount; i++) {
+                standingPlayers[i].teleport(startLocation);
+            }
+
+            // Wait a lil before starting game events, and a bit more before removing the initial floor.
+            timingWheel.schedule(40, EVENT_ACTIVATE_GAME_EVENTS);
+            timingWheel.schedule(100, EVENT_REMOVE_INIT_FLOOR);
+        });
+    }
+
+    @Override
+    protected void onGameEvent(GameEvent event) {
+        switch (event.getType()) {
+            case EVENT_ACTIVATE_GAME_EVENTS -> activateGameEvents();
+            case EVENT_REMOVE_INIT_FLOOR -> {
+                Utils.initFloor(7, 7, Material.AIR, arena.at(0, DiscoMayhemConst.INIT_FLOOR_HEIGHT, 0), journal);
+                initFloorStanding = false;
+            }
+            case EVENT_SAVE_JOURNAL -> {
+                journal.saveAsync(server.getClock()::runAsync);
+                timingWheel.schedule(DiscoMayhemConst.JOURNAL_SAVE_INTERVAL, EVENT_SAVE_JOURNAL);
+            }
+            case EVENT_CHANGE_FLOOR -> changeFloorTimerTick((FloorGrid) event.getSubject(), event.getArg0(), event.getArg1());
+            case EVENT_SELECT_FLOOR_MATERIAL -> {
+                removeFloorExceptForChosenMaterial((FloorGrid) event.getSubject(), DiscoMayhemConst.FloorLogic.DEFAULT_FLOOR_BLOCK_TYPES[event.getArg0()]);
 
-        Location floorCenter = DiscoMayhemConst.INIT_FLOOR_LOCATION; // The center of the floor
-        Utils.initFloor(7, 7, Material.GLASS,floorCenter,DiscoMayhemConst.WORLD); // Initialize the floor under the player to glass
+                //remove the material from the players' hotbar, so it won't confuse them.
+                forEachParticipant(player -> player.getInventory().clear(4));
+            }
+            case EVENT_REMOVE_REMAINING_FLOOR -> {
+                FloorGrid floor = (FloorGrid) event.getSubject();
+                // Go over the material that isn't deleted and remove it as well.
+                floor.removeAllOf(event.getArg0(), journal, WritePriority.CRITICAL);
+                floorRegistry.release(floor);
+            }
+            case EVENT_DECREASE_INTERVAL -> decreaseStartingIntervalForChangingFloor();
+            case EVENT_CHECK_ELIMINATIONS -> {
+                timingWheel.schedule(1, EVENT_CHECK_ELIMINATIONS);
+                checkEliminations();
+            }
+        }
+    }
 
-        // Wait a lil before removing the initial floor.
-        new BukkitRunnable(){
-            @Override
-            public void run() {
-                Utils.initFloor(7, 7, Material.AIR,floorCenter,DiscoMayhemConst.WORLD);
+    /**
+     * Takes the players that fell below every floor out of the game, and ends the game once a single player is left standing.
+     * Runs every tick. Players that stand on a floor are recognized from the floor registry, without looking at the world,
+     * and everyone else is judged by how far below the lowest floor they are.
+     */
+    private void checkEliminations() {
+        // The lowest floor that is standing. Floors are few, players may be many, so it's worked out once per tick.
+        int lowestFloorY = initFloorStanding ? arena.getOriginY() + DiscoMayhemConst.INIT_FLOOR_HEIGHT : Integer.MAX_VALUE;
+        if (floorRegistry != null) {
+            for (FloorGrid floor : floorRegistry.getActiveFloors()) {
+                lowestFloorY = Math.min(lowestFloorY, floor.getY());
             }
-        }.runTaskLater(plugin, 100);
+        }
+        if (lowestFloorY == Integer.MAX_VALUE) return; // No floor yet, so nobody can have fallen off one
+        int eliminationY = lowestFloorY - DiscoMayhemConst.ELIMINATION_DEPTH;
+
+        // Backwards, since eliminating a player moves the last one into its place.
+        for (int i = standingCount - 1; i >= 0; i--) {
+            Player player = standingPlayers[i];
+            Location location = player.getLocation(scratchLocation);
+            if (location == null) continue; // Not in a world yet
+
+            int x = location.getBlockX(), feetY = location.getBlockY(), z = location.getBlockZ();
+            FloorGrid floor = floorRegistry.floorAt(x, z);
+            if (floor != null && floor.getY() == feetY - 1 && floor.isSolidAt(x - floor.getCenterX(), z - floor.getCenterZ())) continue; // Standing on a floor
+            if (feetY >= eliminationY) continue; // Falling, but a floor may still catch them
+
+            eliminate(player, feetY, lowestFloorY);
+            if (!isGameRunning) return; // That was the last player
+        }
+
+        if (hadOpponents && standingCount == 1) {
+            Player winner = standingPlayers[0];
+            server.broadcast(Component.text(winner.getName() + " is the last one standing and wins DiscoMayhem!").color(NamedTextColor.GOLD));
+            winner.showTitle(Title.title(Component.text("You win!").color(NamedTextColor.GOLD), Component.empty(),
+                    Title.Times.times(Duration.ofMillis(200), Duration.ofMillis(3000), Duration.ofMillis(200))));
+            endGame(winner);
+        }
+    }
+
+    /**
+     * Takes a player that fell out of the game, and lets them watch the rest of it. They are put back the way they were once the game ends.
+     */
+    private void eliminate(Player player, int y, int lowestFloorY) {
+        Trace.record(TraceEvent.PLAYER_ELIMINATED, arena.getSlot(), y, lowestFloorY, standingCount - 1);
+        player.sendMessage(Component.text("You fell off the floors and are out!").color(NamedTextColor.RED));
+        // Taken out of the return points, so removePlayer() leaves the player to watch. They are put back once the game ends.
+        ReturnPoint returnPoint = returnPoints.remove(player.getUniqueId());
+        if (returnPoint != null) spectators.add(returnPoint);
+        player.setGameMode(GameMode.SPECTATOR);
+        player.teleport(arena.at(0, DiscoMayhemConst.PLAYER_TP_HEIGHT, 0));
+        removePlayer(player);
     }
 
     @Override
     public void prepareGameSetting(Player player) {
-        player.teleport(DiscoMayhemConst.PLAYER_TP_LOCATION);
+        // Until the area is ready, the player waits where they are. prepareArea() teleports everyone in once the glass floor is placed.
+        // Later on the glass floor may be gone, so players that join late are put on a floor that is still standing.
+        Location spawnLocation = areaReady ? findSpawnLocation() : null;
+        if (spawnLocation != null) player.teleport(spawnLocation);
 
-        DiscoMayhemConst.WORLD.setTime(6000); // Set the time to day
-        DiscoMayhemConst.WORLD.setStorm(false); // Disable rain
-        DiscoMayhemConst.WORLD.setThundering(false); // Disable thunder
+        arena.getGameWorld().makeClearDay(); // Day, no rain and no thunder
 
         player.setGameMode(GameMode.ADVENTURE); // Set the player's game mode to adventure
         player.getInventory().clear(); // Clear the player's inventory
@@ -169,6 +398,35 @@ public class DiscoMayhem extends MinigameSkeleton {
         player.setHealth(20); // Set the player's health to full
     }
 
+    /**
+     * @return Where a player that joins now can be put, on top of a floor that is standing: the glass floor while it's there,
+     * otherwise the block of the newest floor that is closest to its center. Null if no floor has a block left.
+     */
+    private Location findSpawnLocation() {
+        if (initFloorStanding) return arena.at(0, DiscoMayhemConst.PLAYER_TP_HEIGHT, 0);
+        if (floorRegistry == null) return null;
+
+        List<FloorGrid> floors = floorRegistry.getActiveFloors();
+        for (int i = floors.size() - 1; i >= 0; i--) {
+            FloorGrid floor = floors.get(i);
+            int bestX = 0, bestZ = 0, bestDistance = Integer.MAX_VALUE;
+            for (int xOffset = -floor.getXRad(); xOffset <= floor.getXRad(); xOffset++) {
+                for (int zOffset = -floor.getZRad(); zOffset <= floor.getZRad(); zOffset++) {
+                    int distance = xOffset * xOffset + zOffset * zOffset;
+                    if (distance < bestDistance && floor.isSolidAt(xOffset, zOffset)) {
+                        bestX = xOffset;
+                        bestZ = zOffset;
+                        bestDistance = distance;
+                    }
+                }
+            }
+            if (bestDistance != Integer.MAX_VALUE) {
+                return new Location(arena.getWorld(), floor.getCenterX() + bestX + 0.5, floor.getY() + 1, floor.getCenterZ() + bestZ + 0.5);
+            }
+        }
+        return null;
+    }
+
     /**
      * Prepares for a floor cycle. Initializes the new floor and gives it randomised values.
      * after that starts the floor change logic cycle.
@@ -178,8 +436,6 @@ public class DiscoMayhem extends MinigameSkeleton {
         if (!isGameRunning || isGamePaused) {
             return;
         }
-        Bukkit.getServer().broadcast(Component.text("prepping for change floor").color(NamedTextColor.DARK_AQUA));
-
         Random radiusRandomizer = new Random(),intervalRandomizer = new Random();
 
         // Randomize the radius of the floor and the interval between floor changes.
@@ -188,24 +444,55 @@ public class DiscoMayhem extends MinigameSkeleton {
         int interval = intervalRandomizer.nextInt(lowerBound__startingIntervalForChangingFloor, upperBound__startingIntervalForChangingFloor+1);
         int stopInterval = intervalRandomizer.nextInt(lowerBound__stopChangingFloorInterval, upperBound__stopChangingFloorInterval+1);
 
-        // Randomize the center of the new floor. For the z and x coordinates, the min value represents the min distance compared to the last floor reference. For the y coordinate, there is a min and max value.
-        Random newCenterCoordinatesRandomizer = new Random();
-        int randomisedXDiff = newCenterCoordinatesRandomizer.nextInt(DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.LOWER_BOUND_X_CENTER, DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.UPPER_BOUND_X_CENTER+1);
-        randomisedXDiff = randomlyChangeSign(randomisedXDiff);
-        int randomisedZDiff = newCenterCoordinatesRandomizer.nextInt(DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.LOWER_BOUND_Z_CENTER, DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.UPPER_BOUND_Z_CENTER+1);
-        randomisedZDiff = randomlyChangeSign(randomisedZDiff);
-        int randomisedYDiff = newCenterCoordinatesRandomizer.nextInt(DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.LOWER_BOUND_Y_CENTER, DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.UPPER_BOUND_Y_CENTER+1);
-
-        // center of the new floor. the new center is tied to the reference location.
-        Location center = referenceLocation.clone().add(new Location(DiscoMayhemConst.WORLD,randomisedXDiff,randomisedYDiff,randomisedZDiff));
+        Location center = pickNewFloorCenter(referenceLocation, xRad, zRad);
+        Trace.record(TraceEvent.FLOOR_CYCLE_PREPARED, center.getBlockX(), center.getBlockY(), center.getBlockZ(), arena.getSlot());
 
-        Bukkit.broadcastMessage(ChatColor.BLUE + "Diff in centers: " + randomisedXDiff + " " + randomisedYDiff + " " + randomisedZDiff);
-        Bukkit.broadcastMessage(ChatColor.BLUE + "new floor center: " + formatLocation(center));
+        // The floor is kept in memory, so every later step knows what each of its blocks is without reading the world.
+        FloorGrid floor = floorRegistry.place(center.getBlockX(), center.getBlockY(), center.getBlockZ(), xRad, zRad, DiscoMayhemConst.FloorLogic.DEFAULT_FLOOR_BLOCK_TYPES);
 
         // Start the floor change logic cycle.
-        changeFloor(center,xRad, zRad);
-        activateChangeFloorTimerWithGrowingFrequency(center,interval,stopInterval, xRad, zRad);
+        changeFloor(floor);
+        activateChangeFloorTimerWithGrowingFrequency(floor,interval,stopInterval);
+
+    }
+
+    /**
+     * Picks the center of a new floor. The center is randomized relative to the last floor, and a few candidates are tried
+     * until one fits in the arena without overlapping a floor that is still standing. Each try is a couple of lookups in the floor registry's bitmap.
+     * If none of them fit, the last candidate is pulled into the arena and the new floor takes over the blocks it overlaps.
+     * @param referenceLocation The location of the last floor
+     * @param xRad The x radius of the new floor
+     * @param zRad The z radius of the new floor
+     * @return The center of the new floor
+     */
+    private Location pickNewFloorCenter(Location referenceLocation, int xRad, int zRad) {
+        Random newCenterCoordinatesRandomizer = new Random();
+        int centerX = 0, centerY = 0, centerZ = 0;
+
+        for (int attempt = 0; attempt < DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.MAX_PLACEMENT_ATTEMPTS; attempt++) {
+            // For the z and x coordinates, the min value represents the min distance compared to the last floor reference. For the y coordinate, there is a min and max value.
+            int randomisedXDiff = newCenterCoordinatesRandomizer.nextInt(DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.LOWER_BOUND_X_CENTER, DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.UPPER_BOUND_X_CENTER+1);
+            randomisedXDiff = randomlyChangeSign(randomisedXDiff);
+            int randomisedZDiff = newCenterCoordinatesRandomizer.nextInt(DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.LOWER_BOUND_Z_CENTER, DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.UPPER_BOUND_Z_CENTER+1);
+            randomisedZDiff = randomlyChangeSign(randomisedZDiff);
+            int randomisedYDiff = newCenterCoordinatesRandomizer.nextInt(DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.LOWER_BOUND_Y_CENTER, DiscoMayhemConst.FloorLogic.NewFloorSpawnBoundaries.UPPER_BOUND_Y_CENTER+1);
+
+            // center of the new floor. the new center is tied to the reference location.
+            centerX = referenceLocation.getBlockX() + randomisedXDiff;
+            centerY = referenceLocation.getBlockY() + randomisedYDiff;
+            centerZ = referenceLocation.getBlockZ() + randomisedZDiff;
+
+            if (floorRegistry.fits(centerX, centerZ, xRad, zRad)) {
+                return new Location(arena.getWorld(), centerX, centerY, centerZ);
+            }
+        }
 
+        // Nothing fit. Keep the last candidate, but make sure it stays inside the arena.
+        int arenaRadius = DiscoMayhemConst.FloorLogic.ARENA_RADIUS;
+        int originX = arena.getOriginX(), originZ = arena.getOriginZ();
+        centerX = Math.clamp(centerX, originX - arenaRadius + xRad, originX + arenaRadius - xRad);
+        centerZ = Math.clamp(centerZ, originZ - arenaRadius + zRad, originZ + arenaRadius - zRad);
+        return new Location(arena.getWorld(), centerX, centerY, centerZ);
     }
 
     /**
@@ -222,60 +509,76 @@ public class DiscoMayhem extends MinigameSkeleton {
     }
 
     /**
-     * Recursively calls the changeFloor method with a decreasing interval. The interval is decremented by 1 each time the method is called.
+     * Changes the floor over and over with a decreasing interval. The interval is decremented by 1 each time the floor changes.
+     * Each change is an event on the game's timing wheel that schedules the next one.
+     * @param floor The floor to change
      * @param interval The interval between floor changes
-     * @param stopInterval The interval at which the recursion stops
-     * @param xRad The x radius of the floor
-     * @param zRad The z radius of the floor
+     * @param stopInterval The interval at which the changes stop
      */
-    private void activateChangeFloorTimerWithGrowingFrequency(Location center,int interval,int stopInterval,int xRad, int zRad) {
-        if (!isGameRunning || isGamePaused) {
+    private void activateChangeFloorTimerWithGrowingFrequency(FloorGrid floor,int interval,int stopInterval) {
+        if (!isGameRunning) {
             return;
         }
 
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-
-                if (interval == stopInterval || interval == DiscoMayhemConst.MIN_INTERVAL) {
-                    Bukkit.broadcastMessage("recursion stopped. interval is " + interval);
+        timingWheel.schedule(interval, EVENT_CHANGE_FLOOR, floor, interval, stopInterval);
+    }
 
-                    chooseFloorBlockType(center,xRad,zRad);
+    /**
+     * One step of the floor change timer. Either changes the floor and schedules the next step, or stops and chooses the floor's material.
+     */
+    private void changeFloorTimerTick(FloorGrid floor, int interval, int stopInterval) {
+        if (interval == stopInterval || interval == DiscoMayhemConst.MIN_INTERVAL) {
+            Trace.record(TraceEvent.FLOOR_CYCLE_STOPPED, arena.getSlot(), floor.getId(), interval);
 
-                    cancel();
-                    return;
-                }
+            // From here on the server needs to know the floor's blocks, so the pattern the players see becomes the real one.
+            floor.commitShownPattern(journal, WritePriority.CRITICAL);
+            chooseFloorBlockType(floor);
+            return;
+        }
 
-                changeFloor(center,xRad, zRad);
+        if (clientSideFloorCycling) {
+            showFloorChangeToViewers(floor);
+        } else {
+            changeFloor(floor);
+        }
 
-                // Recursively call the method with the new interval
-                activateChangeFloorTimerWithGrowingFrequency( center,interval-1,stopInterval,xRad,zRad);
-            }
-        }.runTaskLater(plugin, interval);
+        // Schedule the next change with the new interval
+        activateChangeFloorTimerWithGrowingFrequency(floor,interval-1,stopInterval);
     }
 
 
 
     /**
-     * Changes the floor to random materials. Needs a center location and the x and z radius of the floor since it doesn't know physically what floor we are talking about.
-     * @param center The center of the floor
-     * @param xLengthRad The x radius of the floor
-     * @param zLengthRad The z radius of the floor
+     * Changes the floor to random materials. Only the blocks whose material actually changed are written.
+     * @param floor The floor to change
      */
-    public void changeFloor(Location center, int xLengthRad, int zLengthRad) {
+    public void changeFloor(FloorGrid floor) {
         Random blockTypeRandomizer = new Random();
         //Bukkit.broadcastMessage("floor changed");
 
-        Material[] blockTypes = DiscoMayhemConst.FloorLogic.DEFAULT_FLOOR_BLOCK_TYPES;
+        floor.randomize(blockTypeRandomizer, journal, WritePriority.CRITICAL);
+    }
 
-        // Change the floor under the player to random materials. The floor is a rectangle with side lengths 2*xLengthRad+1 and 2*zLengthRad+1. goes over 1 block at a time.
-        for (int x = -xLengthRad; x <= xLengthRad; x++) {
-            for (int z = -zLengthRad; z <= zLengthRad; z++) {
-                int material = blockTypeRandomizer.nextInt(blockTypes.length);
-                Location selectedLocation = new Location(DiscoMayhemConst.WORLD, center.getX() + x, center.getY(), center.getZ() + z);
-                selectedLocation.getBlock().setType(blockTypes[material]);
+    /**
+     * Changes the floor to random materials for the players that can see it, without writing to the world.
+     * Every floor block is solid whatever its color, so the players stand on the same floor either way.
+     * The changed blocks are sent as one multi block change to each player in the arena's world that is close enough to the arena,
+     * which covers the game's players and whoever watches them.
+     * @param floor The floor to change
+     */
+    private void showFloorChangeToViewers(FloorGrid floor) {
+        viewerBatch.clear();
+        floor.randomizeForViewers(new Random(), viewerBatch);
+        if (viewerBatch.isEmpty()) return;
+
+        int viewRange = DiscoMayhemConst.VIEWER_RANGE;
+        for (Player player : arena.getGameWorld().getPlayers()) {
+            Location location = player.getLocation();
+            if (Math.abs(location.getBlockX() - arena.getOriginX()) <= viewRange && Math.abs(location.getBlockZ() - arena.getOriginZ()) <= viewRange) {
+                viewerBatch.sendTo(player);
             }
         }
+        viewerBatch.clear();
     }
 
 
@@ -285,140 +588,94 @@ public class DiscoMayhem extends MinigameSkeleton {
      *
      * This is done to make the game more difficult as time goes on.
      *
-     * when the game ends, the intervalTask is immediately canceled. endGame() method takes care of canceling the task.
+     * when the game ends, the timer is cancelled along with every other event of the game.
      */
-    private BukkitTask intervalTask;
     private void decreaseStartingIntervalForChangingFloorTimer() {
-        if (!isGameRunning || isGamePaused) {
+        if (!isGameRunning) {
             return;
         }
 
-        // Decrease the interval for changing the floor as time goes on. The interval is decreased by 2 every a certain amount of time seconds.
-        intervalTask = new BukkitRunnable() {
-            @Override
-            public void run() {
-                if (!isGameRunning || isGamePaused) {
-                    cancel();
-                    return;
-                }
+        timingWheel.schedule(DiscoMayhemConst.FloorLogic.ChangingFloor.DELAY_TO_DECREASE_INTERVAL, EVENT_DECREASE_INTERVAL);
+    }
 
-                if (upperBound__startingIntervalForChangingFloor == DiscoMayhemConst.MIN_INTERVAL) {
-                    Bukkit.broadcastMessage(ChatColor.RED + "The interval for changing the floor has reached the minimum value.");
-                    cancel();
-                    return;
-                }
+    /**
+     * Decreases the intervals once, and schedules the next decrease unless the minimum was reached.
+     */
+    private void decreaseStartingIntervalForChangingFloor() {
+        if (upperBound__startingIntervalForChangingFloor == DiscoMayhemConst.MIN_INTERVAL) {
+            Trace.record(TraceEvent.INTERVALS_AT_MINIMUM, arena.getSlot());
+            return;
+        }
 
-                upperBound__startingIntervalForChangingFloor = Math.max(upperBound__startingIntervalForChangingFloor-2, DiscoMayhemConst.MIN_INTERVAL);
-                Bukkit.broadcastMessage(ChatColor.LIGHT_PURPLE + "upperBound__startingIntervalForChangingFloor: " + upperBound__startingIntervalForChangingFloor);
-                lowerBound__startingIntervalForChangingFloor = Math.max(lowerBound__startingIntervalForChangingFloor-2, DiscoMayhemConst.MIN_INTERVAL);
-                Bukkit.broadcastMessage(ChatColor.LIGHT_PURPLE + "lowerBound__startingIntervalForChangingFloor: " + lowerBound__startingIntervalForChangingFloor);
-                upperBound__stopChangingFloorInterval = Math.max(upperBound__stopChangingFloorInterval-2, DiscoMayhemConst.MIN_INTERVAL);
-                Bukkit.broadcastMessage(ChatColor.LIGHT_PURPLE + "upperBound__stopChangingFloorInterval: " + upperBound__stopChangingFloorInterval);
-                lowerBound__stopChangingFloorInterval = Math.max(lowerBound__stopChangingFloorInterval-2, DiscoMayhemConst.MIN_INTERVAL);
-                Bukkit.broadcastMessage(ChatColor.LIGHT_PURPLE + "lowerBound__stopChangingFloorInterval: " + lowerBound__stopChangingFloorInterval);
-            }
-        }.runTaskTimer(plugin, DiscoMayhemConst.FloorLogic.ChangingFloor.DELAY_TO_DECREASE_INTERVAL, DiscoMayhemConst.FloorLogic.ChangingFloor.DELAY_TO_DECREASE_INTERVAL);
+        upperBound__startingIntervalForChangingFloor = Math.max(upperBound__startingIntervalForChangingFloor-2, DiscoMayhemConst.MIN_INTERVAL);
+        lowerBound__startingIntervalForChangingFloor = Math.max(lowerBound__startingIntervalForChangingFloor-2, DiscoMayhemConst.MIN_INTERVAL);
+        upperBound__stopChangingFloorInterval = Math.max(upperBound__stopChangingFloorInterval-2, DiscoMayhemConst.MIN_INTERVAL);
+        lowerBound__stopChangingFloorInterval = Math.max(lowerBound__stopChangingFloorInterval-2, DiscoMayhemConst.MIN_INTERVAL);
+        Trace.record(TraceEvent.INTERVALS_DECREASED, lowerBound__startingIntervalForChangingFloor, upperBound__startingIntervalForChangingFloor,
+                lowerBound__stopChangingFloorInterval, upperBound__stopChangingFloorInterval);
+
+        decreaseStartingIntervalForChangingFloorTimer();
     }
 
     /**
      * Removes the floor except for a chosen material.
      * After that the method automatically takes care of the remaining parts of the floor, and it deletes them later, after a specified amount of time.
      * The player has a limited time to go from the old floor to the new floor.
-     * @param center The center of the floor
-     * @param xLengthRad The x radius of the floor
-     * @param zLengthRad The z radius of the floor
+     * The floor knows the material of each of its blocks, so none of this reads the world.
+     * @param floor The floor to remove
      * @param materialToKeep The material to keep
      */
-    public void removeFloorExceptForChosenMaterial(Location center, int xLengthRad, int zLengthRad, Material materialToKeep) {
-        if (!isGameRunning || isGamePaused) {
+    public void removeFloorExceptForChosenMaterial(FloorGrid floor, Material materialToKeep) {
+        if (!isGameRunning) {
             return;
         }
 
-        Bukkit.broadcastMessage("floor removal");
-
-        // Take the current floor and remove all the materials except for the materialToKeep. go through 1 block at a time. the size of the floor is 2*xLengthRad+1 and 2*zLengthRad+1.
-        for (int x = -xLengthRad; x <= xLengthRad; x++) {
-            for (int z = -zLengthRad; z <= zLengthRad; z++) {
-                Location selectedLocation = new Location(DiscoMayhemConst.WORLD, center.getX() + x, center.getY(), center.getZ() + z);
+        Trace.record(TraceEvent.FLOOR_REMOVED, arena.getSlot(), floor.getId(), materialToKeep.ordinal());
 
-                // Only change the block if it is not the material to keep
-                if (selectedLocation.getBlock().getType() != materialToKeep) selectedLocation.getBlock().setType(Material.AIR);
-            }
-        }
+        // Take the current floor and remove all the materials except for the materialToKeep.
+        int materialIndexToKeep = floor.indexOf(materialToKeep);
+        floor.removeAllExcept(materialIndexToKeep, journal, WritePriority.CRITICAL);
 
         // At this stage, a new floor is set elsewhere. The player will have a limited time to go from the old floor to the new floor. the timer and the logic
-        // can be seen in the bukkit runnable below.
-        preppingForAFloorCycle(center);
+        // can be seen in the event below.
+        preppingForAFloorCycle(new Location(arena.getWorld(), floor.getCenterX(), floor.getY(), floor.getCenterZ()));
 
         // Remove the remaining parts of the floor after a certain amount of time. This is the time the player has to go from the old floor to the new floor.
-        //fixme: if the new floor is too close to the old one, this runnable will remove blocks from the new floor that their material is the same
-        // as the old chosen material from , if they are in the bounds of the old floor.
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                if (!isGameRunning || isGamePaused) {
-                    cancel();
-                    return;
-                }
-
-                // Go over the material that isn't deleted and remove it as well.
-                for (int x = -xLengthRad; x <= xLengthRad; x++) {
-                    for (int z = -zLengthRad; z <= zLengthRad; z++) {
-                        Location selectedLocation = new Location(DiscoMayhemConst.WORLD, center.getX() + x, center.getY(), center.getZ() + z);
-
-                        // Remove the selected Material
-                        if (selectedLocation.getBlock().getType() == materialToKeep) selectedLocation.getBlock().setType(Material.AIR);
-                    }
-                }
-                cancel();
-            }
-        }.runTaskLater(plugin, DiscoMayhemConst.FloorLogic.DURATION_OF_STAYING_IN_A_FLOOR_WITH_ONLY_CHOSEN_MATERIAL);
+        // The new floor is placed so it doesn't overlap this one, and if it had to, it took over the blocks it shares with this one, so they are not removed here.
+        timingWheel.schedule(DiscoMayhemConst.FloorLogic.DURATION_OF_STAYING_IN_A_FLOOR_WITH_ONLY_CHOSEN_MATERIAL, EVENT_REMOVE_REMAINING_FLOOR, floor, materialIndexToKeep, 0);
     }
 
     /**
      * Chooses a material for the floor. The material is chosen randomly from a list of materials.
-     * The material is given to all players in their 5th hotbar slot.
+     * The material is given to all the game's players in their 5th hotbar slot.
      * After a certain amount of time, the floor is removed except for the chosen material.
-     * @param center The center of the floor
-     * @param xRad The x radius of the floor
-     * @param zRad The z radius of the floor
+     * @param floor The floor to choose a material for
      */
-    private void chooseFloorBlockType(Location center,int xRad, int zRad) {
+    private void chooseFloorBlockType(FloorGrid floor) {
         Random blockTypeRandomizer = new Random();
         Material[] floorBlockTypes = DiscoMayhemConst.FloorLogic.DEFAULT_FLOOR_BLOCK_TYPES;
 
-        Material material = floorBlockTypes[blockTypeRandomizer.nextInt(floorBlockTypes.length)]; // get a random material from the list of floor block types
-        Bukkit.getServer().broadcast(Component.text(ChatColor.RED + "floor type chosen: " + material.toString()));
-        // Give the material to all players in their 5th hotbar slot and send a title to all players of the chosen block type.
-        for (Player player : Bukkit.getOnlinePlayers()) {
+        int materialIndex = blockTypeRandomizer.nextInt(floorBlockTypes.length);
+        Material material = floorBlockTypes[materialIndex]; // get a random material from the list of floor block types
+        Component chosenMessage = Component.text(ChatColor.RED + "floor type chosen: " + material.toString());
+        // Send a title with the chosen material with a color that corresponds to the material. The same title is shown to every player.
+        Title title = Title.title(
+        Component.empty(),
+        Component.text(material.toString()).color(getColorOfMaterial(material)),
+        Title.Times.times(Duration.ofMillis(200), Duration.ofMillis(2000), Duration.ofMillis(200))
+        );
+        // Give the material to the game's players in their 5th hotbar slot and show them the title of the chosen block type.
+        forEachParticipant(player -> {
+            player.sendMessage(chosenMessage);
             player.getInventory().setItem(4, new ItemStack(material));
-
-            // Send a title to the player with the chosen material with a color that corresponds to the material.
-            Title title = Title.title(
-            Component.empty(),
-            Component.text(material.toString()).color(getColorOfMaterial(material)),
-            Title.Times.times(Duration.ofMillis(200), Duration.ofMillis(2000), Duration.ofMillis(200))
-            );
             player.showTitle(title);
-        }
+        });
 
 
         //TODO: as the game progresses, the time to remove the floor should be shortened.
 
         // Remove all the floor except for the chosen material. the time given is the time to remove the floor. overtime this will be shortened as the game progresses and gets more difficult.
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                removeFloorExceptForChosenMaterial(center,xRad, zRad, material);
-
-                //remove the material from the players' hotbar, so it won't confuse them.
-                for (Player player : Bukkit.getOnlinePlayers()) {
-                    player.getInventory().clear(4);
-                }
-
-                cancel();
-            }
-        }.runTaskLater(plugin, DiscoMayhemConst.FloorLogic.DELAY_TO_SELECT_A_FLOOR_MATERIAL);
+        timingWheel.schedule(DiscoMayhemConst.FloorLogic.DELAY_TO_SELECT_A_FLOOR_MATERIAL, EVENT_SELECT_FLOOR_MATERIAL, floor, materialIndex, 0);
     }
 
     /**
@@ -441,13 +698,4 @@ public static TextColor getColorOfMaterial(Material material) {
         default -> NamedTextColor.WHITE;
     };
 }
-
-    /**
-     * Formats a location to a string.
-     * @param location The location to format
-     * @return The formatted location
-     */
-    private static String formatLocation(@NotNull Location location) {
-        return location.getWorld().getName() + ". (" + location.getX() + "," + location.getY() + "," + location.getZ()+")";
-    }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package me.stavgordeev.plugin.Minigames;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps track of every game that is running on the server, and of which game each player is in.
+ * Games register themselves when they start and unregister when they end. Players are added and removed by their game.
+ * <p>
+ * Finding the game of a player is a single hash lookup, so listeners that fire all the time can afford it, no matter how many games are running.
+ */
+public class MinigameRegistry {
+    private final List<MinigameSkeleton> runningGames = new ArrayList<>();
+    private final Map<UUID, MinigameSkeleton> gamesByPlayer = new HashMap<>();
+    private final List<GameLifecycleListener> lifecycleListeners = new ArrayList<>();
+
+    void register(MinigameSkeleton game) {
+        if (runningGames.contains(game)) return;
+        runningGames.add(game);
+        for (GameLifecycleListener listener : lifecycleListeners) {
+            listener.onGameStarted(game);
+        }
+    }
+
+    void unregister(MinigameSkeleton game) {
+        if (!runningGames.remove(game)) return;
+        for (GameLifecycleListener listener : lifecycleListeners) {
+            listener.onGameEnded(game);
+        }
+    }
+
+    /**
+     * @param listener Told about every game that starts or ends from now on
+     */
+    public void addLifecycleListener(GameLifecycleListener listener) {
+        lifecycleListeners.add(listener);
+    }
+
+    /**
+     * @return Whether the player was added. A player can only be in one game at a time.
+     */
+    boolean addParticipant(UUID playerId, MinigameSkeleton game) {
+        MinigameSkeleton current = gamesByPlayer.putIfAbsent(playerId, game);
+        return current == null || current == game;
+    }
+
+    void removeParticipant(UUID playerId, MinigameSkeleton game) {
+        gamesByPlayer.remove(playerId, game);
+    }
+
+    /**
+     * @param player The player to look for
+     * @return The game the player is in, or null if the player isn't in any game
+     */
+    public MinigameSkeleton getGameOf(Player player) {
+        return gamesByPlayer.get(player.getUniqueId());
+    }
+
+    /**
+     * @return The games that are running right now, oldest first
+     */
+    public List<MinigameSkeleton> getRunningGames() {
+        return Collections.unmodifiableList(runningGames);
+    }
+
+    /**
+     * @return How many players are in a game right now
+     */
+    public int getParticipantCount() {
+        return gamesByPlayer.size();
+    }
+
+    /**
+     * Told when a game starts running and when it ends. Called on the thread the game starts or ends on.
+     */
+    public interface GameLifecycleListener {
+        void onGameStarted(MinigameSkeleton game);
+
+        void onGameEnded(MinigameSkeleton game);
+    }
+}
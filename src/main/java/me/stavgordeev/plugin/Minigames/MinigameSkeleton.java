@@ -1,20 +1,44 @@
 package me.stavgordeev.plugin.Minigames;
 // src/main/java/me/stavgordeev/plugin/Minigames/MinigameSkeleton.java
+import me.stavgordeev.plugin.Arenas.Arena;
+import me.stavgordeev.plugin.GameLoop.GameEvent;
+import me.stavgordeev.plugin.GameLoop.TimingWheel;
+import me.stavgordeev.plugin.Metrics.Histogram;
+import me.stavgordeev.plugin.Metrics.Metrics;
+import me.stavgordeev.plugin.Platform.GameServer;
+import me.stavgordeev.plugin.Platform.GameTask;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
-import org.bukkit.plugin.Plugin;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public abstract class MinigameSkeleton {
-    protected final Plugin plugin;
+    // The server the game runs on. Games reach the server only through this and their arena's world, so they can also run headless.
+    protected final GameServer server;
+    // The part of the world the game runs in. Every location of the game is relative to the arena's origin.
+    protected final Arena arena;
     protected volatile boolean isGameRunning;
     protected volatile boolean isGamePaused;
-    protected Player thePlayer;
+    // The players in the game. Kept by UUID, so a player object that went stale (after a relog for example) doesn't matter.
+    private final Set<UUID> participants = new LinkedHashSet<>();
+    // Every timer of the game is an event on this wheel. One repeating task advances it every tick while the game runs and isn't paused.
+    protected final TimingWheel timingWheel = new TimingWheel(this::onGameEvent);
+    private GameTask gameLoopTask;
+    // How many blocks the game wrote, for the metrics. Subclasses add to it wherever they write blocks.
+    protected final LongAdder blockWrites;
 
-    protected MinigameSkeleton(Plugin plugin) {
-        this.plugin = plugin;
+    protected MinigameSkeleton(GameServer server, Arena arena) {
+        this.server = server;
+        this.arena = arena;
+        this.blockWrites = Metrics.counter("minigame_block_writes_total", "game", getClass().getSimpleName(), "arena", Integer.toString(arena.getSlot()));
     }
 
     /**
@@ -22,20 +46,22 @@ public abstract class MinigameSkeleton {
      * If the game is already running, it should not start the game again.
      *
      * The method calls methods that prepare the area (prepareArea()) and the game settings (prepareGameSetting()) which are abstract and should be implemented in the subclass.
-     * @param player the player that started the minigame
+     * @param player the player that started the minigame. More players can join later with addPlayer().
      * @throws InterruptedException if the game is interrupted
      */
     public void start(Player player) throws InterruptedException {
         if (isGameRunning) {
-            Bukkit.getServer().broadcast(Component.text("Minigame is already running!"));
+            server.broadcast(Component.text("Minigame is already running!"));
             return;
         } else {
-            Bukkit.getServer().broadcast(Component.text("Minigame started!").color(NamedTextColor.GREEN));
+            server.broadcast(Component.text("Minigame started!").color(NamedTextColor.GREEN));
         }
 
-        thePlayer = player;
         isGameRunning = true;
         isGamePaused = false;
+        server.getMinigameRegistry().register(this);
+        addPlayer(player);
+        startGameLoop();
 
         //----- List Of Actions To Be Done When The Game Starts -----//
         prepareArea();
@@ -53,7 +79,7 @@ public abstract class MinigameSkeleton {
      */
     public void startFastMode(Player player) throws InterruptedException {
         if (isGameRunning) {
-            Bukkit.getServer().broadcast(Component.text("Minigame is already running!"));
+            server.broadcast(Component.text("Minigame is already running!"));
             return;
         }
 
@@ -102,12 +128,43 @@ public abstract class MinigameSkeleton {
             player.sendMessage("Minigame is not running!");
             return;
         }
-        Bukkit.getServer().broadcast(Component.text("Minigame ended!").color(NamedTextColor.GREEN));
+        server.broadcast(Component.text("Minigame ended!").color(NamedTextColor.GREEN));
 
         pauseGame(player);
         isGameRunning = false;
         isGamePaused = false;
-        thePlayer = null;
+        stopGameLoop();
+
+        MinigameRegistry minigameRegistry = server.getMinigameRegistry();
+        for (UUID participant : participants) {
+            minigameRegistry.removeParticipant(participant, this);
+        }
+        participants.clear();
+        minigameRegistry.unregister(this);
+    }
+
+    /**
+     * Adds a player to the running game. Doesn't teleport the player or prepare them in any way, that's up to the caller.
+     * @param player The player to add
+     * @return Whether the player was added. A player that is already in another game can't be added.
+     */
+    public boolean addPlayer(Player player) {
+        if (!isGameRunning) return false;
+        if (!server.getMinigameRegistry().addParticipant(player.getUniqueId(), this)) return false;
+
+        participants.add(player.getUniqueId());
+        return true;
+    }
+
+    /**
+     * Removes a player from the game. The game ends once its last player is removed.
+     * @param player The player to remove
+     */
+    public void removePlayer(Player player) {
+        if (!participants.remove(player.getUniqueId())) return;
+        server.getMinigameRegistry().removeParticipant(player.getUniqueId(), this);
+
+        if (participants.isEmpty()) endGame(player);
     }
 
     /**
@@ -116,15 +173,73 @@ public abstract class MinigameSkeleton {
      * @return True if the player is in the minigame, false otherwise
      */
     public boolean isPlayerInGame(Player player) {
-        return isGameRunning && thePlayer != null && thePlayer.equals(player);
+        return isGameRunning && participants.contains(player.getUniqueId());
+    }
+
+    /**
+     * @return The UUIDs of the players in the game
+     */
+    public Set<UUID> getParticipants() {
+        return Collections.unmodifiableSet(participants);
     }
 
+    /**
+     * Runs an action for every player in the game that is online. Used to send things to the game's players only, instead of the whole server.
+     * The action must not add or remove players.
+     * @param action What to do with each player
+     */
+    protected void forEachParticipant(Consumer<Player> action) {
+        for (UUID participant : participants) {
+            Player player = server.getPlayer(participant);
+            if (player != null) action.accept(player);
+        }
+    }
+
+    /**
+     * @return Whether the game is running. A paused game is still running.
+     */
+    public boolean isGameRunning() {
+        return isGameRunning;
+    }
+
+    /**
+     * @return How many events are waiting on the game's timing wheel
+     */
+    public int getPendingEventCount() {
+        return timingWheel.getPendingEvents();
+    }
+
+    /**
+     * @return The arena the game runs in
+     */
+    public Arena getArena() {
+        return arena;
+    }
+
+    /**
+     * Hands the arena back once it's clean, so another game can use it. Should be called from endGame() with whatever cleans up the arena.
+     * @param cleanup A future that completes once the arena is clean
+     */
+    protected void releaseArenaAfter(CompletableFuture<?> cleanup) {
+        cleanup.whenComplete((ignored, error) -> {
+            if (error != null) server.getLogger().severe("Cleaning up arena " + arena.getSlot() + " failed: " + error.getMessage());
+            arena.release();
+        });
+    }
+
+    /**
+     * Runs an event of the game's timing wheel once its tick comes. Events don't run while the game is paused, they wait until it is resumed.
+     * @param event The event that is due. Must not be kept after this returns, since the wheel reuses it.
+     */
+    protected abstract void onGameEvent(GameEvent event);
+
     /**
      * Nukes an area. should be followed with code that clears the physical area. typically should be called in endGame().
      * @param center the center of the nuke
      * @param radius the radius of the nuke
+     * @return a future that completes on the main thread once the area is clear
      */
-    public abstract void nukeArea(Location center, int radius);
+    public abstract CompletableFuture<Integer> nukeArea(Location center, int radius);
 
     /**
      * Prepares the area. should be followed with code that prepares the physical area. typically should be called in start().
@@ -136,4 +251,23 @@ public abstract class MinigameSkeleton {
      * typically should be called in start().
      */
     public abstract void prepareGameSetting(Player player);
+
+    private void startGameLoop() {
+        stopGameLoop();
+        // How long each tick of the game's loop takes, events included.
+        Histogram tickTime = Metrics.histogram("minigame_tick_seconds", "game", getClass().getSimpleName(), "arena", Integer.toString(arena.getSlot()));
+        gameLoopTask = server.getClock().runEveryTick(() -> {
+            if (isGamePaused) return;
+
+            long start = System.nanoTime();
+            timingWheel.advance();
+            tickTime.record(System.nanoTime() - start);
+        });
+    }
+
+    private void stopGameLoop() {
+        timingWheel.cancelAll();
+        if (gameLoopTask != null) gameLoopTask.cancel();
+        gameLoopTask = null;
+    }
 }
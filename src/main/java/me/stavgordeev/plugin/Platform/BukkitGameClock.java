@@ -0,0 +1,27 @@
+package me.stavgordeev.plugin.Platform;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * The clock of a Paper server: the Bukkit scheduler.
+ */
+public class BukkitGameClock implements GameClock {
+    private final Plugin plugin;
+
+    public BukkitGameClock(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public GameTask runEveryTick(Runnable task) {
+        BukkitTask bukkitTask = Bukkit.getScheduler().runTaskTimer(plugin, task, 1, 1);
+        return bukkitTask::cancel;
+    }
+
+    @Override
+    public void runAsync(Runnable task) {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, task);
+    }
+}
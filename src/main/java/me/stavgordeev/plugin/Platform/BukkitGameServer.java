@@ -0,0 +1,79 @@
+package me.stavgordeev.plugin.Platform;
+
+import me.stavgordeev.plugin.Arenas.ArenaAllocator;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.MinigamePlugin;
+import me.stavgordeev.plugin.Minigames.MinigameRegistry;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * The Paper server the plugin is loaded in.
+ */
+public class BukkitGameServer implements GameServer {
+    private final MinigamePlugin plugin;
+    private final GameClock clock;
+
+    public BukkitGameServer(MinigamePlugin plugin) {
+        this.plugin = plugin;
+        this.clock = new BukkitGameClock(plugin);
+    }
+
+    /**
+     * @return The plugin, for the games that need more of it than a headless server can give, like BlueprintBazaar's schematics
+     */
+    public MinigamePlugin getPlugin() {
+        return plugin;
+    }
+
+    @Override
+    public GameClock getClock() {
+        return clock;
+    }
+
+    @Override
+    public BlockWriteQueue getBlockWriteQueue() {
+        return MinigamePlugin.getBlockWriteQueue();
+    }
+
+    @Override
+    public MinigameRegistry getMinigameRegistry() {
+        return MinigamePlugin.getMinigameRegistry();
+    }
+
+    @Override
+    public ArenaAllocator getArenaAllocator() {
+        return MinigamePlugin.getArenaAllocator();
+    }
+
+    @Override
+    public Player getPlayer(UUID uuid) {
+        return Bukkit.getPlayer(uuid);
+    }
+
+    @Override
+    public void broadcast(Component message) {
+        Bukkit.getServer().broadcast(message);
+    }
+
+    @Override
+    public Logger getLogger() {
+        return plugin.getLogger();
+    }
+
+    @Override
+    public File getJournalsFolder() {
+        return plugin.getJournalsFolder();
+    }
+
+    @Override
+    public ConfigurationSection getConfig() {
+        return plugin.getConfig();
+    }
+}
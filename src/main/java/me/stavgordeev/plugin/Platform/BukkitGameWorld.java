@@ -0,0 +1,55 @@
+package me.stavgordeev.plugin.Platform;
+
+import me.stavgordeev.plugin.Blocks.AreaClearer;
+import me.stavgordeev.plugin.Blocks.BlockSink;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A Bukkit world. Blocks are written through the block write queue's sink of the world, and areas are cleared with the {@link AreaClearer}.
+ */
+public class BukkitGameWorld implements GameWorld {
+    private final World world;
+    private final BlockSink sink;
+
+    public BukkitGameWorld(World world, BlockWriteQueue blockWriteQueue) {
+        this.world = world;
+        this.sink = blockWriteQueue.sinkFor(world);
+    }
+
+    @Override
+    public String getName() {
+        return world.getName();
+    }
+
+    @Override
+    public World getBukkitWorld() {
+        return world;
+    }
+
+    @Override
+    public BlockSink getBlockSink() {
+        return sink;
+    }
+
+    @Override
+    public CompletableFuture<Integer> clear(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        return AreaClearer.clear(world, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    @Override
+    public Collection<? extends Player> getPlayers() {
+        return world.getPlayers();
+    }
+
+    @Override
+    public void makeClearDay() {
+        world.setTime(6000); // Set the time to day
+        world.setStorm(false); // Disable rain
+        world.setThundering(false); // Disable thunder
+    }
+}
@@ -0,0 +1,20 @@
+package me.stavgordeev.plugin.Platform;
+
+/**
+ * The tick clock the games run on. On a server this is the Bukkit scheduler, headless it's a virtual clock that is ticked by hand
+ * (see {@link me.stavgordeev.plugin.Headless.VirtualClock}).
+ */
+public interface GameClock {
+    /**
+     * Runs a task on the main thread once every tick, starting with the next tick.
+     * @param task The task to run
+     * @return A handle to stop the task with
+     */
+    GameTask runEveryTick(Runnable task);
+
+    /**
+     * Runs a task off the main thread. Used for file writing and other work that must not hold up a tick.
+     * @param task The task to run. Must not touch the world or the games.
+     */
+    void runAsync(Runnable task);
+}
@@ -0,0 +1,62 @@
+package me.stavgordeev.plugin.Platform;
+
+import me.stavgordeev.plugin.Arenas.ArenaAllocator;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Minigames.MinigameRegistry;
+import net.kyori.adventure.text.Component;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Everything the games need from the server they run on. Games reach the server only through this (and the {@link GameWorld} of their arena),
+ * so the same game code runs on a Paper server ({@link BukkitGameServer}) and in a plain JVM ({@link me.stavgordeev.plugin.Headless.HeadlessServer}).
+ */
+public interface GameServer {
+    /**
+     * @return The clock the games' loops run on
+     */
+    GameClock getClock();
+
+    /**
+     * @return The queue every block write of the games goes through
+     */
+    BlockWriteQueue getBlockWriteQueue();
+
+    /**
+     * @return The registry of the games that are running
+     */
+    MinigameRegistry getMinigameRegistry();
+
+    /**
+     * @return The allocator that hands out the arenas games run in
+     */
+    ArenaAllocator getArenaAllocator();
+
+    /**
+     * @return The player with a UUID if they are online and can be sent things, or null
+     */
+    @Nullable
+    Player getPlayer(UUID uuid);
+
+    /**
+     * Sends a message to everyone on the server.
+     */
+    void broadcast(Component message);
+
+    Logger getLogger();
+
+    /**
+     * @return The folder the games' arena journals are saved in
+     */
+    File getJournalsFolder();
+
+    /**
+     * @return The plugin's configuration
+     */
+    ConfigurationSection getConfig();
+}
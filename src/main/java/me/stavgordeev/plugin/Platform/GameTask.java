@@ -0,0 +1,12 @@
+package me.stavgordeev.plugin.Platform;
+
+/**
+ * A task that was scheduled on a {@link GameClock}.
+ */
+@FunctionalInterface
+public interface GameTask {
+    /**
+     * Stops the task. It won't run again after this returns.
+     */
+    void cancel();
+}
@@ -0,0 +1,53 @@
+package me.stavgordeev.plugin.Platform;
+
+import me.stavgordeev.plugin.Blocks.BlockSink;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The world arenas are in, as far as the games need it. On a server this is a Bukkit world, headless it's a box of blocks in memory
+ * (see {@link me.stavgordeev.plugin.Headless.HeadlessWorld}).
+ */
+public interface GameWorld {
+    String getName();
+
+    /**
+     * @return The Bukkit world behind this world, or null if there is none because the game runs headless
+     */
+    @Nullable
+    World getBukkitWorld();
+
+    /**
+     * @return The sink the block write queue writes this world's blocks to
+     */
+    BlockSink getBlockSink();
+
+    /**
+     * Clears every block in a cuboid, through the block write queue. The bounds are inclusive.
+     * @return A future that completes on the main thread with the amount of blocks that were cleared, once the area is clear
+     */
+    CompletableFuture<Integer> clear(int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+
+    /**
+     * Clears every block in a cube around a center.
+     * @param radius The radius of the cube. The side length of the cube is 2*radius+1
+     * @return A future that completes on the main thread with the amount of blocks that were cleared, once the area is clear
+     */
+    default CompletableFuture<Integer> clearCube(int centerX, int centerY, int centerZ, int radius) {
+        return clear(centerX - radius, centerY - radius, centerZ - radius, centerX + radius, centerY + radius, centerZ + radius);
+    }
+
+    /**
+     * @return The players in the world, including the ones that aren't in a game
+     */
+    Collection<? extends Player> getPlayers();
+
+    /**
+     * Sets the time to day and stops rain and thunder, so nothing gets in the way of a game.
+     */
+    void makeClearDay();
+}
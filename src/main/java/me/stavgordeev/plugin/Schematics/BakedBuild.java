@@ -0,0 +1,340 @@
+package me.stavgordeev.plugin.Schematics;
+
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockWriter;
+import me.stavgordeev.plugin.Blocks.WritePriority;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A build in a small format of our own, that can be pasted without WorldEdit parsing anything.
+ * <p>
+ * A baked file sits next to the schematic it was made from, with the .baked extension. It holds the size of the build,
+ * where the build is from the schematic's origin, a palette of the block states it uses, and then the blocks as runs of the same state,
+ * in y, z, x order (x changes the fastest). Numbers are varints, so a run of up to 127 blocks of a state is two bytes.
+ * <p>
+ * Baked files are memory mapped when they are pasted, and their runs are decoded straight into the block write queue a chunk at a time,
+ * without a clipboard or an array of the blocks in between.
+ * Builds with blocks that carry NBT data (signs, chests...) aren't baked, the format only knows block states. Those are pasted with WorldEdit.
+ */
+public final class BakedBuild {
+    public static final String EXTENSION = ".baked";
+    private static final int FILE_MAGIC = 0x42414B44; // "BAKD"
+    private static final int FILE_VERSION = 1;
+
+    private BakedBuild() {
+    }
+
+    /**
+     * @return The baked file of a schematic, whether it exists or not
+     */
+    public static File bakedFileOf(File schematic) {
+        String name = schematic.getName();
+        int extension = name.lastIndexOf('.');
+        return new File(schematic.getParentFile(), (extension > 0 ? name.substring(0, extension) : name) + EXTENSION);
+    }
+
+    /**
+     * @return Whether a schematic has a baked file that was made from the schematic as it is now
+     */
+    public static boolean isUpToDate(File schematic) {
+        File baked = bakedFileOf(schematic);
+        return baked.isFile() && baked.lastModified() >= schematic.lastModified();
+    }
+
+    /**
+     * Bakes every schematic of a folder that doesn't have an up to date baked file yet. Reads the schematics with WorldEdit, so it takes a while
+     * and should be run off the main thread. Schematics that can't be baked keep being pasted with WorldEdit.
+     * @param folder The folder the schematics are in
+     * @param cache Where the schematics are read from
+     * @param logger Where to report the schematics that couldn't be baked
+     * @return How many schematics were baked
+     */
+    public static int bakeAll(File folder, ClipboardCache cache, Logger logger) {
+        File[] schematics = folder.listFiles(file -> file.isFile() && isSchematicFile(file));
+        if (schematics == null) return 0;
+
+        int baked = 0;
+        for (File schematic : schematics) {
+            if (isUpToDate(schematic)) continue;
+            try {
+                Clipboard clipboard = cache.get(schematic);
+                if (clipboard == null) {
+                    logger.warning("Not baking " + schematic.getName() + ": not a schematic format WorldEdit knows");
+                } else if (bake(clipboard, bakedFileOf(schematic))) {
+                    baked++;
+                } else {
+                    logger.info("Not baking " + schematic.getName() + ": it has blocks with NBT data, it stays a schematic");
+                }
+            } catch (IOException e) {
+                logger.warning("Failed to bake " + schematic.getName() + ": " + e.getMessage());
+            }
+        }
+        return baked;
+    }
+
+    /**
+     * @return Whether a file in the builds folder is a schematic, and not a baked build or a file that is being written
+     */
+    public static boolean isSchematicFile(File file) {
+        String name = file.getName();
+        return !name.endsWith(EXTENSION) && !name.endsWith(".tmp");
+    }
+
+    /**
+     * Writes a clipboard to a baked file. The file is replaced in one step, so a half written file is never read.
+     * @param clipboard The clipboard to bake
+     * @param out The file to write
+     * @return Whether the clipboard was baked. Clipboards with blocks that carry NBT data are not.
+     * @throws IOException If the file couldn't be written
+     */
+    public static boolean bake(Clipboard clipboard, File out) throws IOException {
+        BlockVector3 min = clipboard.getRegion().getMinimumPoint();
+        BlockVector3 max = clipboard.getRegion().getMaximumPoint();
+        BlockVector3 offset = min.subtract(clipboard.getOrigin());
+
+        Runs runs = new Runs();
+        for (int y = min.getBlockY(); y <= max.getBlockY(); y++) {
+            for (int z = min.getBlockZ(); z <= max.getBlockZ(); z++) {
+                for (int x = min.getBlockX(); x <= max.getBlockX(); x++) {
+                    BaseBlock block = clipboard.getFullBlock(BlockVector3.at(x, y, z));
+                    if (block.hasNbtData()) return false;
+                    runs.add(block.toImmutableState().getAsString());
+                }
+            }
+        }
+
+        runs.writeTo(out, max.getBlockX() - min.getBlockX() + 1, max.getBlockY() - min.getBlockY() + 1, max.getBlockZ() - min.getBlockZ() + 1,
+                offset.getBlockX(), offset.getBlockY(), offset.getBlockZ());
+        return true;
+    }
+
+    /**
+     * Writes blocks that aren't in a clipboard to a baked file, like a build that was generated. Doesn't need WorldEdit.
+     * @param out The file to write
+     * @param states The block state of every position of the build, in y, z, x order (x changes the fastest)
+     * @param sizeX The size of the build along x. Same for y and z.
+     * @param offsetX Where the build's minimum corner is from the position it's pasted at, along x. Same for y and z.
+     * @throws IOException If the file couldn't be written
+     */
+    public static void write(File out, String[] states, int sizeX, int sizeY, int sizeZ, int offsetX, int offsetY, int offsetZ) throws IOException {
+        if (states.length != sizeX * sizeY * sizeZ) throw new IllegalArgumentException("There must be a state for every position of the build");
+
+        Runs runs = new Runs();
+        for (String state : states) {
+            runs.add(state);
+        }
+        runs.writeTo(out, sizeX, sizeY, sizeZ, offsetX, offsetY, offsetZ);
+    }
+
+    /**
+     * Memory maps a baked file and reads its header and palette. The blocks themselves are only read as they are queued.
+     * Can be called from any thread.
+     * @param file The baked file
+     * @param palette The palette of the block write queue, the build's states are interned into it
+     * @param x The x-coordinate to paste the build at, where the schematic's origin ends up
+     * @param y The y-coordinate to paste the build at
+     * @param z The z-coordinate to paste the build at
+     * @return The blocks of the build, ready to be queued
+     * @throws IOException If the file couldn't be read or isn't a baked build
+     */
+    public static BuildBlocks open(File file, BlockPalette palette, int x, int y, int z) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_VERSION) {
+                throw new IOException("not a baked build, or written by an incompatible version");
+            }
+            int sizeX = readVarInt(buffer), sizeY = readVarInt(buffer), sizeZ = readVarInt(buffer);
+            int minX = x + unZigZag(readVarInt(buffer)), minY = y + unZigZag(readVarInt(buffer)), minZ = z + unZigZag(readVarInt(buffer));
+
+            int[] stateIds = new int[readVarInt(buffer)];
+            for (int i = 0; i < stateIds.length; i++) {
+                byte[] bytes = new byte[readVarInt(buffer)];
+                buffer.get(bytes);
+                stateIds[i] = palette.intern(new String(bytes, StandardCharsets.UTF_8));
+            }
+            int runCount = readVarInt(buffer);
+            ByteBuffer runs = buffer.slice();
+
+            // Go over the runs once here, off the main thread, so a broken file is found before anything of it is queued.
+            long blocks = 0;
+            for (int i = 0; i < runCount; i++) {
+                blocks += readVarInt(buffer);
+                if (readVarInt(buffer) >= stateIds.length) throw new IOException("a run uses a state that isn't in the palette");
+            }
+            if (blocks != (long) sizeX * sizeY * sizeZ) throw new IOException("the runs don't add up to the size of the build");
+
+            return new Cursor(runs, stateIds, minX, minY, minZ, sizeX, sizeY, sizeZ);
+        } catch (BufferUnderflowException | IllegalStateException e) {
+            throw new IOException("the baked build is cut short or broken");
+        }
+    }
+
+    //------------------------------- Internals --------------------------------//
+
+    /**
+     * Gathers the blocks of a build, in y, z, x order, into the palette and runs of a baked file.
+     */
+    private static final class Runs {
+        private final Map<String, Integer> palette = new HashMap<>();
+        private final List<String> states = new ArrayList<>();
+        private final ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        private int runCount, runState = -1, runLength;
+
+        void add(String state) {
+            int index = palette.computeIfAbsent(state, ignored -> {
+                states.add(state);
+                return states.size() - 1;
+            });
+            if (index == runState) {
+                runLength++;
+                return;
+            }
+            endRun();
+            runState = index;
+            runLength = 1;
+        }
+
+        /**
+         * Writes the file. It's replaced in one step, so a half written file is never read.
+         */
+        void writeTo(File out, int sizeX, int sizeY, int sizeZ, int offsetX, int offsetY, int offsetZ) throws IOException {
+            endRun();
+            File temporary = new File(out.getParentFile(), out.getName() + ".tmp");
+            try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                file.writeInt(FILE_MAGIC);
+                file.writeInt(FILE_VERSION);
+                writeVarInt(file, sizeX);
+                writeVarInt(file, sizeY);
+                writeVarInt(file, sizeZ);
+                writeVarInt(file, zigZag(offsetX));
+                writeVarInt(file, zigZag(offsetY));
+                writeVarInt(file, zigZag(offsetZ));
+                writeVarInt(file, states.size());
+                for (String state : states) {
+                    byte[] bytes = state.getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(file, bytes.length);
+                    file.write(bytes);
+                }
+                writeVarInt(file, runCount);
+                runs.writeTo(file);
+            }
+            Files.move(temporary.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private void endRun() {
+            if (runLength == 0) return;
+            try {
+                writeVarInt(runs, runLength);
+                writeVarInt(runs, runState);
+            } catch (IOException e) {
+                throw new IllegalStateException("A byte array stream doesn't throw", e);
+            }
+            runCount++;
+            runLength = 0;
+        }
+    }
+
+    /**
+     * Decodes the runs of a mapped baked file as they are queued. The runs were checked when the file was opened.
+     */
+    private static final class Cursor implements BuildBlocks {
+        private final ByteBuffer runs;
+        private final int[] stateIds;
+        private final int minX, minY, minZ, sizeX, sizeZ, size;
+        private int runState, runLeft; // The state of the run being queued, and how many of its blocks are left
+        private int index; // The index of the next block in y, z, x order
+
+        Cursor(ByteBuffer runs, int[] stateIds, int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ) {
+            this.runs = runs;
+            this.stateIds = stateIds;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.sizeX = sizeX;
+            this.sizeZ = sizeZ;
+            this.size = sizeX * sizeY * sizeZ;
+        }
+
+        @Override
+        public int queueNext(BlockWriter writer, int max, WritePriority priority) {
+            int queued = 0;
+            while (queued < max && index < size) {
+                if (runLeft == 0) {
+                    runLeft = readVarInt(runs);
+                    runState = stateIds[readVarInt(runs)];
+                }
+
+                int count = Math.min(runLeft, max - queued);
+                for (int i = 0; i < count; i++) {
+                    int position = index + i;
+                    int localX = position % sizeX;
+                    int rest = position / sizeX;
+                    writer.setBlock(minX + localX, minY + rest / sizeZ, minZ + rest % sizeZ, runState, priority);
+                }
+                index += count;
+                runLeft -= count;
+                queued += count;
+            }
+            return queued;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalStateException("varint is too long");
+    }
+}
@@ -0,0 +1,24 @@
+package me.stavgordeev.plugin.Schematics;
+
+import me.stavgordeev.plugin.Blocks.BlockWriter;
+import me.stavgordeev.plugin.Blocks.WritePriority;
+
+/**
+ * The blocks of a build that is being pasted, handed out in order a chunk at a time, so a paste can be spread over several ticks.
+ * Implementations hold their own position in the build. Main thread only.
+ */
+public interface BuildBlocks {
+    /**
+     * Queues the next blocks of the build.
+     * @param writer What to write through, usually the block write queue's writer for the world the build goes to
+     * @param max How many blocks to queue at most
+     * @param priority The priority of the queued writes
+     * @return How many blocks were queued. 0 once the whole build was queued.
+     */
+    int queueNext(BlockWriter writer, int max, WritePriority priority);
+
+    /**
+     * @return How many blocks the build has in total
+     */
+    int size();
+}
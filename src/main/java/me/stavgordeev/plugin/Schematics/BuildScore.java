@@ -0,0 +1,201 @@
+package me.stavgordeev.plugin.Schematics;
+
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockSink;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Blocks.WritePriority;
+import me.stavgordeev.plugin.DataStructures.LongArrayList;
+import me.stavgordeev.plugin.Metrics.Histogram;
+import me.stavgordeev.plugin.Metrics.Metrics;
+import me.stavgordeev.plugin.MinigamePlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * How close a plot is to a {@link BuildTarget}: how many positions of the plot hold something other than what the target has there.
+ * <p>
+ * The plot's blocks are kept in an array laid out like the target, so every block that is placed or broken on the plot
+ * updates the count with one array lookup, and the accuracy can be read at any time for free. Nothing runs per tick.
+ * Changes the score isn't told about (a piston, an explosion) make it drift, so it's corrected with {@link #rescan()},
+ * which reads the plot from chunk snapshots off the main thread. That's meant for the end of a round, not for every check.
+ * <p>
+ * A new score assumes the plot is empty. Main thread only.
+ */
+public final class BuildScore {
+    private static final Histogram rescanTime = Metrics.histogram("build_score_rescan_seconds");
+
+    private final BuildTarget target;
+    private final World world;
+    private final int offsetX, offsetY, offsetZ; // From a position of the target to the same position on the plot
+    private final int[] current; // What the plot holds, laid out like the target
+    private int mismatches;
+    private CompletableFuture<Integer> rescan; // The rescan that is running, if there is one
+    private LongArrayList changesDuringRescan; // (index << 32 | state) of every change since the running rescan started
+
+    /**
+     * @param target The build the plot is scored against
+     * @param world The world the plot is in
+     * @param offsetX How far the plot is from where the target was read, along x. Same for y and z.
+     */
+    public BuildScore(BuildTarget target, World world, int offsetX, int offsetY, int offsetZ) {
+        this.target = target;
+        this.world = world;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.offsetZ = offsetZ;
+        this.current = new int[target.volume()]; // All air
+        this.mismatches = target.getNonAirBlocks();
+    }
+
+    /**
+     * Updates the score after a block of the world changed. Costs the same however big the build is.
+     * @param stateId The palette id of the block's new state
+     * @return Whether the block is part of the plot. Blocks outside it don't change the score.
+     */
+    public boolean onBlockChanged(int x, int y, int z, int stateId) {
+        int index = target.indexOf(x - offsetX, y - offsetY, z - offsetZ);
+        if (index < 0) return false;
+
+        set(index, stateId);
+        if (changesDuringRescan != null) changesDuringRescan.add(((long) index << 32) | (stateId & 0xFFFFFFFFL));
+        return true;
+    }
+
+    /**
+     * @return How many positions of the plot differ from the target
+     */
+    public int getMismatches() {
+        return mismatches;
+    }
+
+    /**
+     * @return How close the plot is to the target, from 0 to 1. An empty plot is at 0, and every wrong block costs as much as a missing one.
+     */
+    public double getAccuracy() {
+        return Math.max(0, 1 - mismatches / (double) Math.max(target.getNonAirBlocks(), 1));
+    }
+
+    /**
+     * Reads the whole plot from the world again, and sets the score to what it finds. The chunks are snapshotted on the main thread
+     * and compared to the target on an async thread. Blocks that change while the rescan runs are still counted.
+     * @return A future that completes on the main thread with the number of mismatches. Calling this while a rescan is running returns that rescan.
+     */
+    public CompletableFuture<Integer> rescan() {
+        if (rescan != null && !rescan.isDone()) return rescan;
+
+        long start = System.nanoTime();
+        int minX = target.getMinX() + offsetX, maxX = target.getMaxX() + offsetX;
+        int minZ = target.getMinZ() + offsetZ, maxZ = target.getMaxZ() + offsetZ;
+        int worldMinY = world.getMinHeight(), worldMaxY = world.getMaxHeight() - 1;
+
+        // Paper completes these futures on the main thread, which is where snapshots have to be taken.
+        List<CompletableFuture<ChunkSnapshot>> snapshotFutures = new ArrayList<>();
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                snapshotFutures.add(world.getChunkAtAsync(chunkX, chunkZ)
+                        .thenApply(chunk -> chunk.getChunkSnapshot(false, false, false)));
+            }
+        }
+
+        Executor async = task -> Bukkit.getScheduler().runTaskAsynchronously(MinigamePlugin.plugin, task);
+        Executor mainThread = task -> Bukkit.getScheduler().runTask(MinigamePlugin.plugin, task);
+        LongArrayList changes = new LongArrayList();
+        changesDuringRescan = changes;
+
+        rescan = CompletableFuture.allOf(snapshotFutures.toArray(new CompletableFuture[0]))
+                .thenApplyAsync(ignored -> {
+                    int[] scanned = new int[current.length];
+                    Map<BlockData, Integer> ids = new HashMap<>(); // So the palette's lock is taken once per state, not once per block
+                    for (CompletableFuture<ChunkSnapshot> snapshotFuture : snapshotFutures) {
+                        scanSnapshot(snapshotFuture.join(), worldMinY, worldMaxY, ids, scanned);
+                    }
+                    return scanned;
+                }, async)
+                .thenApplyAsync(scanned -> {
+                    System.arraycopy(scanned, 0, current, 0, current.length);
+                    mismatches = 0;
+                    for (int i = 0; i < current.length; i++) {
+                        if (current[i] != target.stateAt(i)) mismatches++;
+                    }
+                    // The snapshots may miss what changed after they were taken. Setting a state again is harmless, so every change is replayed.
+                    for (int i = 0; i < changes.size(); i++) {
+                        long change = changes.get(i);
+                        set((int) (change >>> 32), (int) change);
+                    }
+                    rescanTime.record(System.nanoTime() - start);
+                    return mismatches;
+                }, mainThread)
+                .whenComplete((result, error) -> {
+                    if (changesDuringRescan == changes) changesDuringRescan = null;
+                    if (error != null) Bukkit.getLogger().severe("Failed to rescan a build plot: " + error.getMessage());
+                });
+        return rescan;
+    }
+
+    /**
+     * Queues air over every block the score knows the plot holds, and resets the score to an empty plot.
+     * Should be preceded by a {@link #rescan()} if the score may have drifted.
+     * @return How many blocks were queued
+     */
+    public int clear() {
+        BlockWriteQueue blockWriteQueue = MinigamePlugin.getBlockWriteQueue();
+        BlockSink sink = blockWriteQueue.sinkFor(world);
+        int cleared = 0;
+        for (int y = target.getMinY(); y <= target.getMaxY(); y++) {
+            for (int z = target.getMinZ(); z <= target.getMaxZ(); z++) {
+                for (int x = target.getMinX(); x <= target.getMaxX(); x++) {
+                    if (current[target.indexOf(x, y, z)] == BlockPalette.AIR) continue;
+                    blockWriteQueue.setBlock(sink, x + offsetX, y + offsetY, z + offsetZ, BlockPalette.AIR, WritePriority.COSMETIC);
+                    cleared++;
+                }
+            }
+        }
+        Arrays.fill(current, BlockPalette.AIR);
+        mismatches = target.getNonAirBlocks();
+        return cleared;
+    }
+
+    //------------------------------- Internals --------------------------------//
+
+    private void set(int index, int stateId) {
+        int wanted = target.stateAt(index);
+        if (current[index] != wanted) mismatches--;
+        if (stateId != wanted) mismatches++;
+        current[index] = stateId;
+    }
+
+    /**
+     * Reads the part of the plot that is in a chunk snapshot into an array laid out like the target. Runs off the main thread.
+     */
+    private void scanSnapshot(ChunkSnapshot snapshot, int worldMinY, int worldMaxY, Map<BlockData, Integer> ids, int[] out) {
+        BlockPalette palette = BlockPalette.get();
+        int chunkMinX = snapshot.getX() << 4, chunkMinZ = snapshot.getZ() << 4;
+        int fromX = Math.max(target.getMinX() + offsetX, chunkMinX), toX = Math.min(target.getMaxX() + offsetX, chunkMinX + 15);
+        int fromZ = Math.max(target.getMinZ() + offsetZ, chunkMinZ), toZ = Math.min(target.getMaxZ() + offsetZ, chunkMinZ + 15);
+        int fromY = Math.max(target.getMinY() + offsetY, worldMinY), toY = Math.min(target.getMaxY() + offsetY, worldMaxY);
+
+        for (int y = fromY; y <= toY; y++) {
+            // Snapshot sections are indexed from the bottom of the world. An empty section leaves the positions as air.
+            if (snapshot.isSectionEmpty((y >> 4) - (worldMinY >> 4))) continue;
+
+            for (int z = fromZ; z <= toZ; z++) {
+                for (int x = fromX; x <= toX; x++) {
+                    BlockData blockData = snapshot.getBlockData(x - chunkMinX, y, z - chunkMinZ);
+                    if (blockData.getMaterial().isAir()) continue;
+                    out[target.indexOf(x - offsetX, y - offsetY, z - offsetZ)] =
+                            ids.computeIfAbsent(blockData, data -> palette.intern(data.getAsString()));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package me.stavgordeev.plugin.Schematics;
+
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockWriter;
+import me.stavgordeev.plugin.Blocks.WritePriority;
+import me.stavgordeev.plugin.DataStructures.BlockPos;
+import me.stavgordeev.plugin.DataStructures.LongArrayList;
+
+import java.util.Arrays;
+
+/**
+ * A build as it should look, held in memory as one palette id per position of its bounding box, so any position can be looked up with an array index.
+ * Players are scored against it with {@link BuildScore}. Immutable, so it can be shared between threads.
+ */
+public final class BuildTarget {
+    private final int minX, minY, minZ;
+    private final int width, height, length;
+    private final int[] states; // Indexed by indexOf(x, y, z)
+    private final int nonAirBlocks;
+
+    private BuildTarget(int minX, int minY, int minZ, int width, int height, int length, int[] states) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.width = width;
+        this.height = height;
+        this.length = length;
+        this.states = states;
+        int nonAir = 0;
+        for (int state : states) {
+            if (state != BlockPalette.AIR) nonAir++;
+        }
+        this.nonAirBlocks = nonAir;
+    }
+
+    /**
+     * Reads the blocks of a build into a target. Every block the build queues ends up in the target, and positions it doesn't queue are air.
+     * Can run on any thread.
+     * @param blocks The blocks of the build, at the positions the build is pasted to
+     * @return The collector the blocks were read into. Blocks that aren't part of {@code blocks} (like blocks with NBT data) can be added to it before it's built.
+     */
+    public static Collector collect(BuildBlocks blocks) {
+        Collector collector = new Collector(blocks.size());
+        while (blocks.queueNext(collector, Integer.MAX_VALUE, WritePriority.COSMETIC) > 0) {
+            // Everything is read in one go
+        }
+        return collector;
+    }
+
+    /**
+     * @return The index of a position in the target, or -1 if it's outside the target's bounding box
+     */
+    public int indexOf(int x, int y, int z) {
+        int localX = x - minX, localY = y - minY, localZ = z - minZ;
+        if (localX < 0 || localY < 0 || localZ < 0 || localX >= width || localY >= height || localZ >= length) return -1;
+        return (localY * length + localZ) * width + localX;
+    }
+
+    /**
+     * @return The state that belongs at an index
+     */
+    public int stateAt(int index) {
+        return states[index];
+    }
+
+    /**
+     * @return How many positions the bounding box has
+     */
+    public int volume() {
+        return states.length;
+    }
+
+    /**
+     * @return How many positions of the build hold a block
+     */
+    public int getNonAirBlocks() {
+        return nonAirBlocks;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return minX + width - 1;
+    }
+
+    public int getMaxY() {
+        return minY + height - 1;
+    }
+
+    public int getMaxZ() {
+        return minZ + length - 1;
+    }
+
+    /**
+     * Gathers the blocks of a build, in any order, and lays them out into a target once they are all in.
+     */
+    public static final class Collector implements BlockWriter {
+        private final LongArrayList positions;
+        private int[] stateIds;
+
+        private Collector(int expectedBlocks) {
+            positions = new LongArrayList(expectedBlocks);
+            stateIds = new int[Math.max(expectedBlocks, 1)];
+        }
+
+        @Override
+        public void setBlock(int x, int y, int z, int stateId, WritePriority priority) {
+            if (positions.size() == stateIds.length) stateIds = Arrays.copyOf(stateIds, stateIds.length << 1);
+            stateIds[positions.size()] = stateId;
+            positions.add(BlockPos.pack(x, y, z));
+        }
+
+        /**
+         * @return The target the gathered blocks make up. An empty build makes a target of a single air block at 0, 0, 0.
+         */
+        public BuildTarget build() {
+            if (positions.isEmpty()) return new BuildTarget(0, 0, 0, 1, 1, 1, new int[1]);
+
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+            for (int i = 0; i < positions.size(); i++) {
+                long packed = positions.get(i);
+                int x = BlockPos.unpackX(packed), y = BlockPos.unpackY(packed), z = BlockPos.unpackZ(packed);
+                minX = Math.min(minX, x); minY = Math.min(minY, y); minZ = Math.min(minZ, z);
+                maxX = Math.max(maxX, x); maxY = Math.max(maxY, y); maxZ = Math.max(maxZ, z);
+            }
+
+            int width = maxX - minX + 1, height = maxY - minY + 1, length = maxZ - minZ + 1;
+            int[] states = new int[width * height * length]; // Air where the build has no block
+            for (int i = 0; i < positions.size(); i++) {
+                long packed = positions.get(i);
+                int index = ((BlockPos.unpackY(packed) - minY) * length + BlockPos.unpackZ(packed) - minZ) * width + BlockPos.unpackX(packed) - minX;
+                states[index] = stateIds[i];
+            }
+            return new BuildTarget(minX, minY, minZ, width, height, length, states);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package me.stavgordeev.plugin.Schematics;
+
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
+import me.stavgordeev.plugin.Metrics.Metrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps parsed schematics in memory, so pasting the same build again doesn't read and decode the file again.
+ * <p>
+ * Entries are keyed by the canonical path of the file, and are only used while the file's last modified time and length
+ * are the same as when it was parsed, so a build that is replaced on disk is read again on its next paste.
+ * The cache holds up to a budget of memory, and drops the least recently used clipboards to stay under it.
+ * The size of a clipboard is an estimate from its volume, WorldEdit doesn't say how much memory a clipboard takes.
+ * <p>
+ * Cached clipboards are shared, so they must only be read, never changed. Thread safe.
+ */
+public final class ClipboardCache {
+    // A rough figure for what one block of a clipboard costs: a reference to a shared block state, plus the overhead of the storage around it.
+    private static final long ESTIMATED_BYTES_PER_BLOCK = 16;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // In access order, the least recently used first
+    private long bytes;
+
+    private final LongAdder hits = Metrics.counter("schematic_cache_hits_total");
+    private final LongAdder misses = Metrics.counter("schematic_cache_misses_total");
+    private final LongAdder evictions = Metrics.counter("schematic_cache_evictions_total");
+
+    /**
+     * @param maxBytes How much memory the cached clipboards may take, by estimate. 0 turns the cache off.
+     */
+    public ClipboardCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        Metrics.gauge("schematic_cache_bytes", this::getBytes);
+        Metrics.gauge("schematic_cache_entries", this::size);
+    }
+
+    /**
+     * Gets the parsed clipboard of a schematic file, from the cache if the file didn't change since it was cached, or from the disk if not.
+     * @param file The schematic file
+     * @return The clipboard, or null if the file isn't in a schematic format WorldEdit knows
+     * @throws IOException If the file couldn't be read
+     */
+    public Clipboard get(File file) throws IOException {
+        String key = file.getCanonicalPath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.lastModified == lastModified && entry.length == length) {
+                    hits.increment();
+                    return entry.clipboard;
+                }
+                remove(key); // The file changed since it was cached
+            }
+        }
+
+        // Parsing is done outside the lock, so a big build being read doesn't hold up the others.
+        misses.increment();
+        Clipboard clipboard = read(file);
+        if (clipboard == null) return null;
+
+        put(key, new Entry(clipboard, lastModified, length, clipboard.getRegion().getVolume() * ESTIMATED_BYTES_PER_BLOCK));
+        return clipboard;
+    }
+
+    /**
+     * Drops every cached clipboard.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return How much memory the cached clipboards take, by estimate
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return How many clipboards are cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    //------------------------------- Internals --------------------------------//
+
+    private record Entry(Clipboard clipboard, long lastModified, long length, long bytes) {
+    }
+
+    private static Clipboard read(File file) throws IOException {
+        ClipboardFormat format = ClipboardFormats.findByFile(file);
+        if (format == null) return null;
+
+        try (FileInputStream fis = new FileInputStream(file);
+             ClipboardReader reader = format.getReader(fis)) {
+            return reader.read();
+        }
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        // A clipboard that takes more than the whole budget would only push everything else out, and then itself.
+        if (entry.bytes > maxBytes) return;
+
+        remove(key); // Another thread may have cached the same file in the meantime
+        entries.put(key, entry);
+        bytes += entry.bytes;
+
+        Iterator<Map.Entry<String, Entry>> leastRecentlyUsed = entries.entrySet().iterator();
+        while (bytes > maxBytes && leastRecentlyUsed.hasNext()) {
+            bytes -= leastRecentlyUsed.next().getValue().bytes;
+            leastRecentlyUsed.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) bytes -= removed.bytes;
+    }
+}
@@ -0,0 +1,195 @@
+package me.stavgordeev.plugin.Schematics;
+
+import me.stavgordeev.plugin.BuildLoader;
+import me.stavgordeev.plugin.DataStructures.LongArrayList;
+import me.stavgordeev.plugin.DataStructures.LongIntHashMap;
+import me.stavgordeev.plugin.MinigamePlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Pastes a whole gallery of builds, each on its own plot, without freezing the server however many builds there are.
+ * <p>
+ * A few builds are worked on at a time, each going through the same stages: the chunks of its plot are loaded in the background and held with a chunk ticket,
+ * the plot is prepared (a floor for example), and the build is loaded with {@link BuildLoader}, which parses it on a background thread
+ * and queues its blocks a chunk per tick. Once a build is in the world, its chunks are let go and the next build is started,
+ * so parsing one build overlaps with pasting the others. The block write queue writes everything under its tick budget.
+ * <p>
+ * Main thread only.
+ */
+public final class GalleryPaste {
+    private static final int BUILDS_IN_PROGRESS = 4;
+
+    private final List<Plot> plots;
+    private final World world;
+    private final int plotRadius;
+    private final Consumer<Plot> preparePlot;
+    private final Consumer<GalleryPaste> onProgress;
+    private final CompletableFuture<Integer> done = new CompletableFuture<>();
+    private final List<BuildInProgress> inProgress = new ArrayList<>();
+    // How many builds in progress hold each chunk. A plugin has one ticket per chunk, and neighbouring plots share chunks.
+    private final LongIntHashMap chunkHolds = new LongIntHashMap(64, 0);
+    private int nextPlot;
+    private int finishedBuilds, failedBuilds, blocksWritten;
+
+    /**
+     * A build and where it goes. The build's origin is pasted at the plot's position.
+     */
+    public record Plot(File schematic, int x, int y, int z) {
+    }
+
+    /**
+     * @param plots The builds to paste, in the order they are pasted
+     * @param world The world to paste them into
+     * @param plotRadius How far a build reaches from its plot's position, to know which chunks to load
+     * @param preparePlot Called for every plot right before its build is loaded, once its chunks are loaded
+     * @param onProgress Called every time a build is done, pasted or failed
+     */
+    public GalleryPaste(List<Plot> plots, World world, int plotRadius, Consumer<Plot> preparePlot, Consumer<GalleryPaste> onProgress) {
+        this.plots = List.copyOf(plots);
+        this.world = world;
+        this.plotRadius = plotRadius;
+        this.preparePlot = preparePlot;
+        this.onProgress = onProgress;
+    }
+
+    /**
+     * Starts pasting the gallery.
+     * @return A future that completes with how many blocks were written, once every build is done. Cancelling it stops the gallery.
+     */
+    public CompletableFuture<Integer> start() {
+        if (plots.isEmpty()) done.complete(0);
+        // Stop whatever is still in progress once the gallery is done or cancelled.
+        done.whenComplete((written, error) -> cancelInProgress());
+        for (int i = 0; i < BUILDS_IN_PROGRESS; i++) {
+            startNext();
+        }
+        return done;
+    }
+
+    /**
+     * Stops the gallery. Builds that are done stay, and the blocks that were already queued are still written.
+     */
+    public void cancel() {
+        done.cancel(false);
+    }
+
+    public boolean isDone() {
+        return done.isDone();
+    }
+
+    /**
+     * @return How many builds are done, pasted or failed
+     */
+    public int getFinishedBuilds() {
+        return finishedBuilds;
+    }
+
+    /**
+     * @return How many builds couldn't be loaded
+     */
+    public int getFailedBuilds() {
+        return failedBuilds;
+    }
+
+    public int getTotalBuilds() {
+        return plots.size();
+    }
+
+    //------------------------------- Internals --------------------------------//
+
+    private void startNext() {
+        if (done.isDone() || nextPlot >= plots.size()) return;
+        Plot plot = plots.get(nextPlot++);
+
+        // Load the plot's chunks in the background, and hold them until the build is in. Paper completes these futures on the main thread.
+        LongArrayList chunks = new LongArrayList();
+        List<CompletableFuture<?>> chunkLoads = new ArrayList<>();
+        for (int chunkX = (plot.x - plotRadius) >> 4; chunkX <= (plot.x + plotRadius) >> 4; chunkX++) {
+            for (int chunkZ = (plot.z - plotRadius) >> 4; chunkZ <= (plot.z + plotRadius) >> 4; chunkZ++) {
+                chunks.add(((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL));
+                chunkLoads.add(world.getChunkAtAsync(chunkX, chunkZ));
+            }
+        }
+
+        BuildInProgress build = new BuildInProgress();
+        build.future = CompletableFuture.allOf(chunkLoads.toArray(new CompletableFuture[0]))
+                .thenCompose(ignored -> {
+                    if (done.isDone()) return CompletableFuture.completedFuture(0);
+                    hold(chunks);
+                    build.holdsChunks = true;
+                    preparePlot.accept(plot);
+                    build.loading = BuildLoader.loadSchematic(plot.schematic, world, plot.x, plot.y, plot.z);
+                    return build.loading;
+                });
+        inProgress.add(build);
+
+        // Hopped to the main thread explicitly, so the bookkeeping below is safe whichever thread finished the build.
+        Executor mainThread = task -> Bukkit.getScheduler().runTask(MinigamePlugin.plugin, task);
+        build.future.whenCompleteAsync((written, error) -> {
+            inProgress.remove(build);
+            if (build.holdsChunks) release(chunks);
+            if (done.isDone()) return;
+
+            if (error == null) {
+                blocksWritten += written;
+            } else {
+                failedBuilds++; // Already logged by the loader
+            }
+            finishedBuilds++;
+            onProgress.accept(this);
+
+            if (finishedBuilds == plots.size()) {
+                done.complete(blocksWritten);
+            } else {
+                startNext();
+            }
+        }, mainThread);
+    }
+
+    private void hold(LongArrayList chunks) {
+        for (int i = 0; i < chunks.size(); i++) {
+            long chunk = chunks.get(i);
+            if (chunkHolds.put(chunk, chunkHolds.get(chunk) + 1) == 0) {
+                world.addPluginChunkTicket((int) (chunk >> 32), (int) chunk, MinigamePlugin.plugin);
+            }
+        }
+    }
+
+    private void release(LongArrayList chunks) {
+        for (int i = 0; i < chunks.size(); i++) {
+            long chunk = chunks.get(i);
+            int holds = chunkHolds.get(chunk) - 1;
+            if (holds > 0) {
+                chunkHolds.put(chunk, holds);
+            } else {
+                chunkHolds.remove(chunk);
+                world.removePluginChunkTicket((int) (chunk >> 32), (int) chunk, MinigamePlugin.plugin);
+            }
+        }
+    }
+
+    private void cancelInProgress() {
+        for (BuildInProgress build : new ArrayList<>(inProgress)) {
+            // The loader's own future has to be cancelled as well, cancelling the one that waits for it doesn't reach it.
+            if (build.loading != null) build.loading.cancel(false);
+            build.future.cancel(false);
+        }
+    }
+
+    /**
+     * A build that is being worked on: the whole of its stages, and the load itself once it started.
+     */
+    private static final class BuildInProgress {
+        private CompletableFuture<Integer> future;
+        private CompletableFuture<Integer> loading;
+        private boolean holdsChunks;
+    }
+}
@@ -0,0 +1,51 @@
+package me.stavgordeev.plugin.Schematics;
+
+import me.stavgordeev.plugin.Blocks.BlockWriter;
+import me.stavgordeev.plugin.DataStructures.BlockPos;
+import me.stavgordeev.plugin.DataStructures.LongIntHashMap;
+import me.stavgordeev.plugin.Metrics.Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers what the builds pasted on a plot left there, so the next build pasted on the same plot only writes the blocks that differ.
+ * Builds of the same size, or that share a floor or walls, then only cost the blocks that actually change.
+ * <p>
+ * Only the pastes know what they wrote, so the plot must be {@link #forget() forgotten} whenever something else writes over it, like clearing the arena.
+ * Main thread only.
+ */
+public final class PlotState {
+    private static final int MISSING = -1;
+    private static final LongAdder skippedWrites = Metrics.counter("schematic_paste_skipped_writes_total");
+
+    private final LongIntHashMap states = new LongIntHashMap(4096, MISSING);
+
+    /**
+     * @param target Where the writes that do change something go
+     * @return A writer that drops the writes of states the plot already holds, and passes the others on to the target
+     */
+    public BlockWriter writerOver(BlockWriter target) {
+        return (x, y, z, stateId, priority) -> {
+            long packed = BlockPos.pack(x, y, z);
+            if (states.put(packed, stateId) == stateId) {
+                skippedWrites.increment();
+                return;
+            }
+            target.setBlock(x, y, z, stateId, priority);
+        };
+    }
+
+    /**
+     * Forgets a single position, so the next paste writes it no matter what. Used for blocks that are pasted some other way, like blocks with NBT data.
+     */
+    public void forget(int x, int y, int z) {
+        states.remove(BlockPos.pack(x, y, z));
+    }
+
+    /**
+     * Forgets everything, so the next paste writes every block of its build.
+     */
+    public void forget() {
+        states.clear();
+    }
+}
@@ -0,0 +1,336 @@
+package me.stavgordeev.plugin.Schematics;
+
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.Region;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The builds of the builds folder, with what is known about each one: its size, how many blocks it has, a hash of its content and its format.
+ * <p>
+ * The catalog is kept in a manifest file, so when the server starts only the builds that were added or changed since are parsed.
+ * While the server runs the folder is watched, and builds that are added, replaced or deleted are picked up on their own, without a restart.
+ * Games pick and lay out builds from the catalog, without opening any schematic file.
+ * <p>
+ * The indexing runs on a thread of its own. The catalog can be read from any thread.
+ */
+public final class SchematicCatalog {
+    private static final int MANIFEST_VERSION = 1;
+    // A file that is being copied in fires a lot of events. It is only indexed once the folder was quiet for this long.
+    private static final long SETTLE_MILLIS = 500;
+
+    private final File folder;
+    private final File manifestFile;
+    private final ClipboardCache cache;
+    private final Logger logger;
+    private final Map<String, BuildInfo> builds = new ConcurrentHashMap<>();
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MinigamePlugin schematic catalog");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile WatchService watchService;
+
+    /**
+     * What the catalog knows about a build.
+     * @param name The file name of the build, in the builds folder
+     * @param format The schematic format WorldEdit read it with
+     * @param width The size of the build along x
+     * @param height The size of the build along y
+     * @param length The size of the build along z
+     * @param blocks How many of the build's blocks aren't air
+     * @param hash The SHA-256 of the file, in hex. Two builds with the same hash are the same build.
+     * @param lastModified The last modified time of the file when it was indexed
+     * @param fileSize The size of the file when it was indexed
+     */
+    public record BuildInfo(String name, String format, int width, int height, int length, int blocks, String hash,
+                            long lastModified, long fileSize) {
+        /**
+         * @return The larger of the build's width and length
+         */
+        public int footprint() {
+            return Math.max(width, length);
+        }
+    }
+
+    /**
+     * @param folder The builds folder
+     * @param manifestFile Where the catalog is kept between starts. Should be outside the builds folder.
+     * @param cache Where builds are parsed into when they are indexed
+     * @param logger Where to report builds that are added, removed, or can't be read
+     */
+    public SchematicCatalog(File folder, File manifestFile, ClipboardCache cache, Logger logger) {
+        this.folder = folder;
+        this.manifestFile = manifestFile;
+        this.cache = cache;
+        this.logger = logger;
+    }
+
+    /**
+     * Reads the manifest, indexes the builds that changed since it was written, and starts watching the folder. Returns right away.
+     * @return A future that completes once the catalog is up to date with the folder
+     */
+    public CompletableFuture<Void> start() {
+        return CompletableFuture.runAsync(() -> {
+            readManifest();
+            if (updateAll()) writeManifest();
+            logger.info("The build catalog has " + builds.size() + " builds");
+            startWatching();
+        }, indexer);
+    }
+
+    /**
+     * Stops watching the folder. Called when the plugin is disabled.
+     */
+    public void close() {
+        try {
+            if (watchService != null) watchService.close();
+        } catch (IOException ignored) {
+            // Closing only fails if it's already closed.
+        }
+        indexer.shutdownNow();
+    }
+
+    /**
+     * @return Every build in the catalog, by name
+     */
+    public List<BuildInfo> getBuilds() {
+        List<BuildInfo> sorted = new ArrayList<>(builds.values());
+        sorted.sort(Comparator.comparing(BuildInfo::name));
+        return sorted;
+    }
+
+    /**
+     * @return The file of a build
+     */
+    public File fileOf(BuildInfo build) {
+        return new File(folder, build.name());
+    }
+
+    /**
+     * @return The largest footprint of all builds, or 0 if there are none
+     */
+    public int getLargestFootprint() {
+        int largest = 0;
+        for (BuildInfo build : builds.values()) {
+            largest = Math.max(largest, build.footprint());
+        }
+        return largest;
+    }
+
+    //------------------------------- Internals --------------------------------//
+
+    private void readManifest() {
+        if (!manifestFile.isFile()) return;
+
+        YamlConfiguration manifest = YamlConfiguration.loadConfiguration(manifestFile);
+        if (manifest.getInt("version", 0) != MANIFEST_VERSION) return; // Everything gets indexed again
+
+        for (Map<?, ?> entry : manifest.getMapList("builds")) {
+            try {
+                BuildInfo build = new BuildInfo((String) entry.get("name"), (String) entry.get("format"),
+                        ((Number) entry.get("width")).intValue(), ((Number) entry.get("height")).intValue(), ((Number) entry.get("length")).intValue(),
+                        ((Number) entry.get("blocks")).intValue(), (String) entry.get("hash"),
+                        ((Number) entry.get("last-modified")).longValue(), ((Number) entry.get("file-size")).longValue());
+                builds.put(build.name(), build);
+            } catch (ClassCastException | NullPointerException e) {
+                // A broken entry is indexed again
+            }
+        }
+    }
+
+    private void writeManifest() {
+        YamlConfiguration manifest = new YamlConfiguration();
+        manifest.set("version", MANIFEST_VERSION);
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (BuildInfo build : getBuilds()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", build.name());
+            entry.put("format", build.format());
+            entry.put("width", build.width());
+            entry.put("height", build.height());
+            entry.put("length", build.length());
+            entry.put("blocks", build.blocks());
+            entry.put("hash", build.hash());
+            entry.put("last-modified", build.lastModified());
+            entry.put("file-size", build.fileSize());
+            entries.add(entry);
+        }
+        manifest.set("builds", entries);
+
+        // Replace the old manifest in one step, so a crash while writing can't leave half of it behind.
+        try {
+            Path temporary = manifestFile.toPath().resolveSibling(manifestFile.getName() + ".tmp");
+            Files.writeString(temporary, manifest.saveToString());
+            Files.move(temporary, manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Failed to write the build manifest: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Brings the whole catalog up to date with the folder.
+     * @return Whether anything changed
+     */
+    private boolean updateAll() {
+        Set<String> names = new HashSet<>(builds.keySet());
+        File[] files = folder.listFiles(file -> file.isFile() && BakedBuild.isSchematicFile(file));
+        if (files != null) {
+            for (File file : files) {
+                names.add(file.getName());
+            }
+        }
+
+        boolean changed = false;
+        for (String name : names) {
+            changed |= update(name);
+        }
+        return changed;
+    }
+
+    /**
+     * Brings the entry of one file up to date: indexes it if it is new or changed, and drops it if it's gone.
+     * @return Whether the entry changed
+     */
+    private boolean update(String name) {
+        File file = new File(folder, name);
+        BuildInfo known = builds.get(name);
+        if (!file.isFile()) {
+            if (known == null) return false;
+            builds.remove(name);
+            logger.info("Build removed: " + name);
+            return true;
+        }
+        if (known != null && known.lastModified() == file.lastModified() && known.fileSize() == file.length()) return false;
+
+        try {
+            BuildInfo build = index(file);
+            builds.put(name, build);
+            logger.info((known == null ? "Build added: " : "Build changed: ") + name + " (" + build.width() + "x" + build.height() + "x" + build.length() + ")");
+        } catch (Exception e) {
+            // WorldEdit can fail on a broken file with any exception, not only an IOException. One bad file shouldn't stop the rest from being indexed.
+            builds.remove(name);
+            logger.warning("Broken build " + name + ": " + e);
+        }
+        return true;
+    }
+
+    private BuildInfo index(File file) throws IOException {
+        long lastModified = file.lastModified(), fileSize = file.length();
+        ClipboardFormat format = ClipboardFormats.findByFile(file);
+        if (format == null) throw new IOException("not a schematic format WorldEdit knows");
+        Clipboard clipboard = cache.get(file);
+        if (clipboard == null) throw new IOException("not a schematic format WorldEdit knows");
+
+        Region region = clipboard.getRegion();
+        int blocks = 0;
+        for (BlockVector3 position : region) {
+            if (!clipboard.getBlock(position).getBlockType().getMaterial().isAir()) blocks++;
+        }
+        return new BuildInfo(file.getName(), format.getName(), region.getWidth(), region.getHeight(), region.getLength(), blocks,
+                hash(file), lastModified, fileSize);
+    }
+
+    private static String hash(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM has SHA-256", e);
+        }
+    }
+
+    private void startWatching() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            folder.toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            logger.warning("Can't watch the builds folder, new builds need a restart: " + e.getMessage());
+            return;
+        }
+
+        Thread watcher = new Thread(this::watch, "MinigamePlugin schematic watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Collects the files that changed, and hands them to the indexer once the folder is quiet. Runs until the watch service is closed.
+     */
+    private void watch() {
+        Set<String> changed = new HashSet<>();
+        boolean overflowed = false;
+        try {
+            while (true) {
+                WatchKey key = changed.isEmpty() && !overflowed ? watchService.take() : watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflowed = true; // Events were lost, so the whole folder is looked at again
+                        } else if (event.context() instanceof Path path && BakedBuild.isSchematicFile(path.toFile())) {
+                            changed.add(path.getFileName().toString());
+                        }
+                    }
+                    if (!key.reset()) return; // The folder is gone
+                    continue;
+                }
+
+                Set<String> toUpdate = Set.copyOf(changed);
+                boolean updateAll = overflowed;
+                changed.clear();
+                overflowed = false;
+                indexer.execute(() -> {
+                    boolean updated = false;
+                    if (updateAll) {
+                        updated = updateAll();
+                    } else {
+                        for (String name : toUpdate) {
+                            updated |= update(name);
+                        }
+                    }
+                    if (updated) writeManifest();
+                });
+            }
+        } catch (InterruptedException | ClosedWatchServiceException | RejectedExecutionException e) {
+            // The catalog is closed
+        }
+    }
+}
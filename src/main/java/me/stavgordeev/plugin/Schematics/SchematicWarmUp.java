@@ -0,0 +1,75 @@
+package me.stavgordeev.plugin.Schematics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Parses every build of a folder into a {@link ClipboardCache} in the background, so the first round that uses a build doesn't pay for reading it.
+ * Files that can't be parsed are reported, so a broken build shows up when the server starts instead of in the middle of a round.
+ * <p>
+ * The builds are parsed in parallel on a fork-join pool of their own, which is shut down once they are all done,
+ * so the warm-up doesn't take the common pool from the rest of the server.
+ */
+public final class SchematicWarmUp {
+    private SchematicWarmUp() {
+    }
+
+    /**
+     * Starts parsing the builds of a folder. Returns right away.
+     * @param folder The folder the schematic files are in
+     * @param cache The cache to parse them into
+     * @param logger Where to report how it went
+     * @return A future that completes off the main thread with the result, once every build was parsed or failed to
+     */
+    public static CompletableFuture<Result> start(File folder, ClipboardCache cache, Logger logger) {
+        File[] files = folder.listFiles(file -> file.isFile() && BakedBuild.isSchematicFile(file));
+        if (files == null || files.length == 0) return CompletableFuture.completedFuture(new Result(0, List.of(), 0));
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(files.length, Runtime.getRuntime().availableProcessors() - 1)));
+        AtomicInteger loaded = new AtomicInteger();
+        Queue<String> broken = new ConcurrentLinkedQueue<>();
+        long start = System.nanoTime();
+
+        // A parallel stream that is run from inside a fork-join pool splits its work over that pool.
+        return CompletableFuture.runAsync(() -> Arrays.stream(files).parallel().forEach(file -> {
+                    try {
+                        if (cache.get(file) != null) {
+                            loaded.incrementAndGet();
+                        } else {
+                            broken.add(file.getName() + " (not a schematic format WorldEdit knows)");
+                        }
+                    } catch (Exception e) {
+                        broken.add(file.getName() + " (" + e.getMessage() + ")");
+                    }
+                }), pool)
+                .thenApply(ignored -> {
+                    Result result = new Result(loaded.get(), new ArrayList<>(broken), System.nanoTime() - start);
+                    logger.info("Warmed up " + result.loaded() + " of " + files.length + " builds in " + result.nanos() / 1_000_000 + "ms");
+                    for (String file : result.broken()) {
+                        logger.warning("Broken build: " + file);
+                    }
+                    // A cache that's too small for every build keeps only the last ones that were parsed.
+                    if (cache.size() < result.loaded()) {
+                        logger.warning("Only " + cache.size() + " of the builds fit in the schematic cache. Raise schematics.cache-size-mb to keep them all.");
+                    }
+                    return result;
+                })
+                .whenComplete((result, error) -> pool.shutdown());
+    }
+
+    /**
+     * @param loaded How many builds were parsed
+     * @param broken The builds that couldn't be parsed, with the reason
+     * @param nanos How long the warm-up took
+     */
+    public record Result(int loaded, List<String> broken, long nanos) {
+    }
+}
@@ -0,0 +1,143 @@
+package me.stavgordeev.plugin.Tracing;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A debug trace of what the minigames do, kept in memory instead of being sent to chat or the console.
+ * <p>
+ * Events are recorded as primitives into a fixed size ring buffer, so recording doesn't create garbage, and the oldest events are overwritten
+ * once the buffer is full. Recording is lock free: a writer claims a slot by bumping a counter and publishes it once it's written,
+ * and a reader skips slots that are being written. Events are only turned into text when the trace is read, with {@link #snapshot(int)}.
+ * <p>
+ * Events above the current level are dropped right away, so tracing that is off costs a field read and a comparison.
+ */
+public final class Trace {
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    private static final int ARGS_PER_EVENT = 4;
+    private static final long WRITING = -1;
+
+    private static final TraceEvent[] EVENT_TYPES = TraceEvent.values();
+    private static final AtomicLong cursor = new AtomicLong();
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY); // The sequence number each slot holds, or WRITING.
+    private static final long[] times = new long[CAPACITY];
+    private static final int[] events = new int[CAPACITY];
+    private static final long[] args = new long[CAPACITY * ARGS_PER_EVENT];
+    private static volatile int enabledLevel = TraceLevel.OFF.ordinal();
+    private static volatile long clearedBefore; // Events with a lower sequence number were cleared.
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            published.set(i, WRITING);
+        }
+    }
+
+    private Trace() {
+    }
+
+    public static void setLevel(TraceLevel level) {
+        enabledLevel = level.ordinal();
+    }
+
+    public static TraceLevel getLevel() {
+        return TraceLevel.values()[enabledLevel];
+    }
+
+    /**
+     * @return Whether events of a level are recorded right now. Worth checking before working out arguments that aren't free.
+     */
+    public static boolean isEnabled(TraceLevel level) {
+        return level.ordinal() <= enabledLevel;
+    }
+
+    public static void record(TraceEvent event, long arg0) {
+        record(event, arg0, 0, 0, 0);
+    }
+
+    public static void record(TraceEvent event, long arg0, long arg1) {
+        record(event, arg0, arg1, 0, 0);
+    }
+
+    public static void record(TraceEvent event, long arg0, long arg1, long arg2) {
+        record(event, arg0, arg1, arg2, 0);
+    }
+
+    /**
+     * Records an event, if its level is enabled. Can be called from any thread.
+     */
+    public static void record(TraceEvent event, long arg0, long arg1, long arg2, long arg3) {
+        if (event.getLevel().ordinal() > enabledLevel) return;
+
+        long sequence = cursor.getAndIncrement();
+        int slot = (int) sequence & MASK;
+        // getAndSet is a full fence, so readers can't see the new arguments before they see that the slot is being written.
+        published.getAndSet(slot, WRITING);
+
+        times[slot] = System.nanoTime();
+        events[slot] = event.ordinal();
+        int argsStart = slot * ARGS_PER_EVENT;
+        args[argsStart] = arg0;
+        args[argsStart + 1] = arg1;
+        args[argsStart + 2] = arg2;
+        args[argsStart + 3] = arg3;
+
+        published.lazySet(slot, sequence);
+    }
+
+    /**
+     * Copies the newest events out of the buffer. Events that are being overwritten while they are copied are left out.
+     * @param maxEvents How many events to copy at most
+     * @return The events, oldest first
+     */
+    public static List<Record> snapshot(int maxEvents) {
+        long end = cursor.get();
+        long start = Math.max(clearedBefore, end - Math.min(maxEvents, CAPACITY));
+        List<Record> records = new ArrayList<>((int) Math.max(end - start, 0));
+
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) sequence & MASK;
+            if (published.get(slot) != sequence) continue;
+
+            int argsStart = slot * ARGS_PER_EVENT;
+            Record record = new Record(times[slot], EVENT_TYPES[events[slot]],
+                    args[argsStart], args[argsStart + 1], args[argsStart + 2], args[argsStart + 3]);
+
+            // A writer that claimed the slot in the meantime may have changed it while it was copied.
+            VarHandle.loadLoadFence();
+            if (published.get(slot) == sequence) records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Forgets every recorded event.
+     */
+    public static void clear() {
+        clearedBefore = cursor.get();
+    }
+
+    /**
+     * @return How many events were recorded since the server started, including the ones that were overwritten
+     */
+    public static long getRecordedCount() {
+        return cursor.get();
+    }
+
+    /**
+     * A recorded event.
+     * @param nanoTime When the event was recorded, from System.nanoTime()
+     */
+    public record Record(long nanoTime, TraceEvent event, long arg0, long arg1, long arg2, long arg3) {
+        /**
+         * @param nowNanos The current System.nanoTime(), to show how long ago the event happened
+         * @return The event as text
+         */
+        public String format(long nowNanos) {
+            return String.format("[-%.1fs] %s %s", (nowNanos - nanoTime) / 1e9, event.getLevel(), event.format(arg0, arg1, arg2, arg3));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package me.stavgordeev.plugin.Tracing;
+
+import org.bukkit.Material;
+
+/**
+ * The events that can be traced. A recorded event is only its type and up to 4 numbers, the text is made out of them when the trace is read.
+ */
+public enum TraceEvent {
+    FLOOR_CYCLE_PREPARED(TraceLevel.DEBUG, (x, y, z, arena) -> "arena " + arena + ": prepping for change floor, new floor center " + x + "," + y + "," + z),
+    FLOOR_CYCLE_STOPPED(TraceLevel.DEBUG, (arena, floor, interval, unused) -> "arena " + arena + ": floor " + floor + " stopped changing, interval is " + interval),
+    FLOOR_REMOVED(TraceLevel.DEBUG, (arena, floor, material, unused) -> "arena " + arena + ": floor " + floor + " removed except for " + materialName(material)),
+    INTERVALS_DECREASED(TraceLevel.INFO, (lowerStart, upperStart, lowerStop, upperStop) ->
+            "floor change intervals decreased: start " + lowerStart + "-" + upperStart + ", stop " + lowerStop + "-" + upperStop),
+    INTERVALS_AT_MINIMUM(TraceLevel.INFO, (arena, unused0, unused1, unused2) -> "arena " + arena + ": the interval for changing the floor has reached the minimum value"),
+    FLOOR_INITIALIZED(TraceLevel.DEBUG, (x, y, z, blocks) -> "floor initialized around " + x + "," + y + "," + z + ", " + blocks + " blocks"),
+    PLAYER_ELIMINATED(TraceLevel.DEBUG, (arena, y, lowestFloorY, remaining) ->
+            "arena " + arena + ": a player fell to y " + y + ", below the lowest floor at " + lowestFloorY + ", " + remaining + " players left"),
+    BLOCK_PUSHED(TraceLevel.DEBUG, (x, y, z, material) -> "pushed " + materialName(material) + " to " + x + "," + y + "," + z);
+
+    private final TraceLevel level;
+    private final Formatter formatter;
+
+    TraceEvent(TraceLevel level, Formatter formatter) {
+        this.level = level;
+        this.formatter = formatter;
+    }
+
+    public TraceLevel getLevel() {
+        return level;
+    }
+
+    String format(long arg0, long arg1, long arg2, long arg3) {
+        return formatter.format(arg0, arg1, arg2, arg3);
+    }
+
+    private static String materialName(long ordinal) {
+        Material[] materials = Material.values();
+        return ordinal >= 0 && ordinal < materials.length ? materials[(int) ordinal].toString() : "unknown material " + ordinal;
+    }
+
+    @FunctionalInterface
+    private interface Formatter {
+        String format(long arg0, long arg1, long arg2, long arg3);
+    }
+}
@@ -0,0 +1,10 @@
+package me.stavgordeev.plugin.Tracing;
+
+/**
+ * How detailed the trace is. Each level records its own events and those of the levels before it.
+ */
+public enum TraceLevel {
+    OFF,
+    INFO,
+    DEBUG
+}
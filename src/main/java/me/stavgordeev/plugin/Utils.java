@@ -1,25 +1,31 @@
 package me.stavgordeev.plugin;
 
-import me.stavgordeev.plugin.Constants.DiscoMayhemConst;
-import org.bukkit.Bukkit;
+import me.stavgordeev.plugin.Blocks.AreaClearer;
+import me.stavgordeev.plugin.Blocks.BlockPalette;
+import me.stavgordeev.plugin.Blocks.BlockWriter;
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
+import me.stavgordeev.plugin.Blocks.WritePriority;
+import me.stavgordeev.plugin.Tracing.Trace;
+import me.stavgordeev.plugin.Tracing.TraceEvent;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 
+import java.util.concurrent.CompletableFuture;
+
 public class Utils {
-    public static void nukeGameArea(Location center, int radius) {
-        for (int x = -radius; x <= radius; x++) {
-            for (int y = -radius; y <= radius; y++) {
-                for (int z = -radius; z <= radius; z++) {
-                    Location currentLocation = center.clone().add(x, y, z);
-                    currentLocation.getBlock().setType(Material.AIR);
-                }
-            }
-        }
+    /**
+     * Removes all blocks in a cube around a location. The clearing is done by the AreaClearer, which only touches chunk sections that have blocks in them.
+     * @param center The center of the area to nuke
+     * @param radius The radius of the area
+     * @return A future that completes on the main thread with the amount of blocks that were removed, once the area is clear
+     */
+    public static CompletableFuture<Integer> nukeGameArea(Location center, int radius) {
+        return AreaClearer.clearCube(center, radius);
     }
 
     /**
-     * Initializes the floor under the player to a specific material.
+     * Initializes the floor under the player to a specific material. The blocks are queued as critical writes in the block write queue.
      * @param xLengthRad The x radius of the floor
      * @param zLengthRad The z radius of the floor
      * @param material The material to set the floor to
@@ -27,15 +33,30 @@ public class Utils {
      * @param world The world to set the floor in
      */
     public static void initFloor(int xLengthRad, int zLengthRad, Material material, Location center, World world) {
-        // Initialize the floor under the player to stone 1 block at a time. The floor is a rectangle with side lengths 2*xLengthRad+1 and 2*zLengthRad+1.
+        BlockWriteQueue blockWriteQueue = MinigamePlugin.getBlockWriteQueue();
+        initFloor(xLengthRad, zLengthRad, material, center, blockWriteQueue.writerFor(blockWriteQueue.sinkFor(world)));
+    }
+
+    /**
+     * Initializes the floor under the player to a specific material, writing through a specific writer (for example an arena journal).
+     * @param xLengthRad The x radius of the floor
+     * @param zLengthRad The z radius of the floor
+     * @param material The material to set the floor to
+     * @param center The center of the floor
+     * @param writer The writer to write the floor's blocks through
+     */
+    public static void initFloor(int xLengthRad, int zLengthRad, Material material, Location center, BlockWriter writer) {
+        int stateId = BlockPalette.get().idOf(material);
+        int centerX = center.getBlockX(), y = center.getBlockY(), centerZ = center.getBlockZ();
+
+        // Initialize the floor under the player 1 block at a time. The floor is a rectangle with side lengths 2*xLengthRad+1 and 2*zLengthRad+1.
         for (int x = -xLengthRad; x <= xLengthRad; x++) {
             for (int z = -zLengthRad; z <= zLengthRad; z++) {
-                Location selectedLocation = new Location(world, center.getX() + x, center.getY(), center.getZ() + z);
-                selectedLocation.getBlock().setType(material);
+                writer.setBlock(centerX + x, y, centerZ + z, stateId, WritePriority.CRITICAL);
             }
         }
 
-        Bukkit.broadcastMessage("floor initialized");
+        Trace.record(TraceEvent.FLOOR_INITIALIZED, centerX, y, centerZ, (2L * xLengthRad + 1) * (2L * zLengthRad + 1));
     }
 
 
@@ -1,7 +1,9 @@
 package me.stavgordeev.plugin.commands;
 
 import me.stavgordeev.plugin.Constants.BlueprintBazaarConst;
+import me.stavgordeev.plugin.MinigamePlugin;
 import me.stavgordeev.plugin.Minigames.BlueprintBazaar;
+import me.stavgordeev.plugin.Schematics.BakedBuild;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
@@ -13,15 +15,19 @@ import org.jetbrains.annotations.Nullable;
 import java.util.List;
 
 public class BlueprintBazaarCommands extends MinigameCommandsSkeleton {
-    private final BlueprintBazaar blueprintbazaar;
-    public BlueprintBazaarCommands(BlueprintBazaar blueprintbazaar) {
-        this.blueprintbazaar = blueprintbazaar;
+    private final MinigamePlugin plugin;
+    public BlueprintBazaarCommands(MinigamePlugin plugin) {
+        this.plugin = plugin;
     }
 
     @Override
     protected boolean handleCommand(Player player, Command command, String label, String[] args) {
+        // Every command except for starting a game is about the game the player is in.
+        BlueprintBazaar blueprintbazaar;
         switch (args[0].toLowerCase()) {
             case "start":
+                blueprintbazaar = createGame(player, arena -> new BlueprintBazaar(MinigamePlugin.getGameServer(), arena));
+                if (blueprintbazaar == null) break;
                 try {
                     blueprintbazaar.start(player);
                 } catch (InterruptedException e) {
@@ -29,32 +35,68 @@ public class BlueprintBazaarCommands extends MinigameCommandsSkeleton {
                 }
                 break;
             case "start_hard_mode":
+                blueprintbazaar = createGame(player, arena -> new BlueprintBazaar(MinigamePlugin.getGameServer(), arena));
+                if (blueprintbazaar == null) break;
                 try {
                     blueprintbazaar.startFastMode(player);
                 } catch (InterruptedException e) {
                     throw new RuntimeException(e);
                 }
                 break;
+            case "join":
+                joinGame(player, args, BlueprintBazaar.class);
+                break;
+            case "leave":
+                leaveGame(player, BlueprintBazaar.class);
+                break;
             case "stop":
-                blueprintbazaar.pauseGame(player);
+                blueprintbazaar = findGame(player, BlueprintBazaar.class);
+                if (blueprintbazaar != null) blueprintbazaar.pauseGame(player);
                 break;
             case "resume":
-                blueprintbazaar.resumeGame(player);
+                blueprintbazaar = findGame(player, BlueprintBazaar.class);
+                if (blueprintbazaar != null) blueprintbazaar.resumeGame(player);
                 break;
             case "end":
-                blueprintbazaar.endGame(player);
+                blueprintbazaar = findGame(player, BlueprintBazaar.class);
+                if (blueprintbazaar != null) blueprintbazaar.endGame(player);
                 break;
             case "nuke_area":
-                blueprintbazaar.nukeArea(BlueprintBazaarConst.GAME_START_LOCATION, 50);
+                blueprintbazaar = findGame(player, BlueprintBazaar.class);
+                if (blueprintbazaar != null) blueprintbazaar.nukeArea(blueprintbazaar.getArena().getOrigin(), BlueprintBazaarConst.GAME_AREA_RADIUS);
                 break;
             case "spawn_build":
-                blueprintbazaar.prepareNewBuild();
+                blueprintbazaar = findGame(player, BlueprintBazaar.class);
+                if (blueprintbazaar != null) blueprintbazaar.prepareNewBuild();
                 break;
             case "showcase_all_builds":
-                blueprintbazaar.loadAllSchematics();
+                blueprintbazaar = findGame(player, BlueprintBazaar.class);
+                // The builds that don't fit in the arena go on later pages.
+                if (blueprintbazaar != null) blueprintbazaar.loadAllSchematics(args.length >= 2 && args[1].matches("\\d+") ? Integer.parseInt(args[1]) : 1);
+                break;
+            case "abort_showcase":
+                blueprintbazaar = findGame(player, BlueprintBazaar.class);
+                if (blueprintbazaar != null) blueprintbazaar.abortShowcase();
                 break;
             case "init_schematics":
-                blueprintbazaar.initSchematics();
+                blueprintbazaar = findGame(player, BlueprintBazaar.class);
+                if (blueprintbazaar != null) blueprintbazaar.initSchematics();
+                break;
+            case "bake_builds":
+                // Reading every schematic takes a while, so it's done off the main thread. The player is told how it went on the main thread.
+                player.sendMessage(Component.text("Baking the builds..."));
+                Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                    Component report;
+                    try {
+                        int baked = BakedBuild.bakeAll(plugin.getSchematicsFolder(), MinigamePlugin.getClipboardCache(), plugin.getLogger());
+                        report = Component.text("Baked " + baked + " builds.").color(NamedTextColor.GREEN);
+                    } catch (Exception e) {
+                        plugin.getLogger().severe("Failed to bake the builds: " + e.getMessage());
+                        report = Component.text("Failed to bake the builds: " + e.getMessage()).color(NamedTextColor.RED);
+                    }
+                    Component message = report;
+                    Bukkit.getScheduler().runTask(plugin, () -> player.sendMessage(message));
+                });
                 break;
             default:
                 Bukkit.getServer().broadcast(Component.text("Unknown command.").color(NamedTextColor.RED));
@@ -66,7 +108,7 @@ public class BlueprintBazaarCommands extends MinigameCommandsSkeleton {
     @Override
     protected @Nullable List<String> handleTabComplete(CommandSender sender, Command command, String label, String[] args) {
         if (args.length == 1) {
-            return List.of("start", "stop", "start_hard_mode", "resume", "end", "nuke_area", "spawn_build", "showcase_all_builds", "init_schematics");
+            return List.of("start", "join", "leave", "stop", "start_hard_mode", "resume", "end", "nuke_area", "spawn_build", "showcase_all_builds", "abort_showcase", "init_schematics", "bake_builds");
         }
         return List.of();
     }
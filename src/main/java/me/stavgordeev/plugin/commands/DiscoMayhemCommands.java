@@ -2,6 +2,7 @@
 package me.stavgordeev.plugin.commands;
 
 import me.stavgordeev.plugin.Constants.DiscoMayhemConst;
+import me.stavgordeev.plugin.MinigamePlugin;
 import me.stavgordeev.plugin.Minigames.DiscoMayhem;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
@@ -14,16 +15,20 @@ import org.jetbrains.annotations.Nullable;
 import java.util.List;
 
 public class DiscoMayhemCommands extends MinigameCommandsSkeleton {
-    private final DiscoMayhem discoMayhem;
+    private final MinigamePlugin plugin;
 
-    public DiscoMayhemCommands(DiscoMayhem discoMayhem) {
-        this.discoMayhem = discoMayhem;
+    public DiscoMayhemCommands(MinigamePlugin plugin) {
+        this.plugin = plugin;
     }
 
     @Override
     protected boolean handleCommand(Player player, Command command, String label, String[] args) {
+        // Every command except for starting a game is about the game the player is in.
+        DiscoMayhem discoMayhem;
         switch (args[0].toLowerCase()) {
             case "start":
+                discoMayhem = createGame(player, arena -> new DiscoMayhem(MinigamePlugin.getGameServer(), arena));
+                if (discoMayhem == null) break;
                 try {
                     discoMayhem.start(player);
                 } catch (InterruptedException e) {
@@ -31,23 +36,35 @@ public class DiscoMayhemCommands extends MinigameCommandsSkeleton {
                 }
                 break;
             case "start_hard_mode":
+                discoMayhem = createGame(player, arena -> new DiscoMayhem(MinigamePlugin.getGameServer(), arena));
+                if (discoMayhem == null) break;
                 try {
                     discoMayhem.startFastMode(player);
                 } catch (InterruptedException e) {
                     throw new RuntimeException(e);
                 }
                 break;
+            case "join":
+                joinGame(player, args, DiscoMayhem.class);
+                break;
+            case "leave":
+                leaveGame(player, DiscoMayhem.class);
+                break;
             case "stop":
-                discoMayhem.pauseGame(player);
+                discoMayhem = findGame(player, DiscoMayhem.class);
+                if (discoMayhem != null) discoMayhem.pauseGame(player);
                 break;
             case "resume":
-                discoMayhem.resumeGame(player);
+                discoMayhem = findGame(player, DiscoMayhem.class);
+                if (discoMayhem != null) discoMayhem.resumeGame(player);
                 break;
             case "end":
-                discoMayhem.endGame(player);
+                discoMayhem = findGame(player, DiscoMayhem.class);
+                if (discoMayhem != null) discoMayhem.endGame(player);
                 break;
             case "nuke_area":
-                discoMayhem.nukeArea(DiscoMayhemConst.GAME_START_LOCATION, 50);
+                discoMayhem = findGame(player, DiscoMayhem.class);
+                if (discoMayhem != null) discoMayhem.nukeArea(discoMayhem.getArena().getOrigin(), DiscoMayhemConst.GAME_AREA_RADIUS);
                 break;
             default:
                 Bukkit.getServer().broadcast(Component.text("Unknown command.").color(NamedTextColor.RED));
@@ -59,8 +76,8 @@ public class DiscoMayhemCommands extends MinigameCommandsSkeleton {
     @Override
     protected @Nullable List<String> handleTabComplete(CommandSender sender, Command command, String label, String[] args) {
         if (args.length == 1) {
-            return List.of("start", "stop", "start_hard_mode", "resume", "end", "nuke_area");
+            return List.of("start", "join", "leave", "stop", "start_hard_mode", "resume", "end", "nuke_area");
         }
         return List.of();
     }
-}
\ No newline at end of file
+}
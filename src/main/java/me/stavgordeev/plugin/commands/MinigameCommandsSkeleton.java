@@ -1,5 +1,9 @@
 package me.stavgordeev.plugin.commands;
 
+import me.stavgordeev.plugin.Arenas.Arena;
+import me.stavgordeev.plugin.MinigamePlugin;
+import me.stavgordeev.plugin.Minigames.MinigameSkeleton;
+import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -9,6 +13,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
+import java.util.function.Function;
 
 public abstract class MinigameCommandsSkeleton implements CommandExecutor, TabExecutor {
 
@@ -69,4 +74,75 @@ public abstract class MinigameCommandsSkeleton implements CommandExecutor, TabEx
      * @return A List of possible completions for the final argument, or null
      */
     protected abstract @Nullable List<String> handleTabComplete(CommandSender sender, Command command, String label, String[] args);
+
+    /**
+     * Creates a new game in a free arena. The game isn't started.
+     * @param player The player that wants to start the game
+     * @param factory Creates the game in the arena it gets
+     * @return The new game, or null if the player is already in a game or no arena is free. The player is told why.
+     */
+    protected <T extends MinigameSkeleton> @Nullable T createGame(Player player, Function<Arena, T> factory) {
+        if (MinigamePlugin.getMinigameRegistry().getGameOf(player) != null) {
+            player.sendMessage("You are already in a game!");
+            return null;
+        }
+
+        Arena arena = MinigamePlugin.getArenaAllocator().allocate();
+        if (arena == null) {
+            player.sendMessage("All arenas are in use. Try again once a game ends.");
+            return null;
+        }
+        return factory.apply(arena);
+    }
+
+    /**
+     * @param player The player to look for
+     * @param type The type of game to look for
+     * @return The game of this type the player is in, or null if the player isn't in one. The player is told if they aren't.
+     */
+    protected <T extends MinigameSkeleton> @Nullable T findGame(Player player, Class<T> type) {
+        MinigameSkeleton game = MinigamePlugin.getMinigameRegistry().getGameOf(player);
+        if (!type.isInstance(game)) {
+            player.sendMessage("You are not in a game of this minigame!");
+            return null;
+        }
+        return type.cast(game);
+    }
+
+    /**
+     * Adds a player to the game another player is in, and prepares them for it.
+     * @param player The player that wants to join
+     * @param args The arguments of the command. The second one is the name of a player in the game to join.
+     * @param type The type of game that can be joined with this command
+     */
+    protected <T extends MinigameSkeleton> void joinGame(Player player, String[] args, Class<T> type) {
+        if (args.length < 2) {
+            player.sendMessage("Please provide the name of a player in the game you want to join.");
+            return;
+        }
+
+        Player target = Bukkit.getPlayerExact(args[1]);
+        MinigameSkeleton game = target == null ? null : MinigamePlugin.getMinigameRegistry().getGameOf(target);
+        if (!type.isInstance(game)) {
+            player.sendMessage(args[1] + " is not in a game of this minigame!");
+            return;
+        }
+        if (!game.addPlayer(player)) {
+            // A game can also turn players away for its own reasons, like DiscoMayhem when there's no floor to put them on.
+            player.sendMessage(MinigamePlugin.getMinigameRegistry().getGameOf(player) != null
+                    ? "You are already in a game!" : "This game can't be joined right now, try again in a moment.");
+            return;
+        }
+        game.prepareGameSetting(player);
+    }
+
+    /**
+     * Removes a player from the game of this type they are in.
+     * @param player The player that wants to leave
+     * @param type The type of game that can be left with this command
+     */
+    protected <T extends MinigameSkeleton> void leaveGame(Player player, Class<T> type) {
+        T game = findGame(player, type);
+        if (game != null) game.removePlayer(player);
+    }
 }
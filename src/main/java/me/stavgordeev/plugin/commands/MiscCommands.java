@@ -1,7 +1,11 @@
 package me.stavgordeev.plugin.commands;
 
+import me.stavgordeev.plugin.Blocks.BlockWriteQueue;
 import me.stavgordeev.plugin.MinigamePlugin;
+import me.stavgordeev.plugin.Tracing.Trace;
+import me.stavgordeev.plugin.Tracing.TraceLevel;
 import me.stavgordeev.plugin.Utils;
+import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -10,6 +14,10 @@ import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
 
 public class MiscCommands implements CommandExecutor, TabExecutor {
@@ -40,8 +48,19 @@ public class MiscCommands implements CommandExecutor, TabExecutor {
                 }
                 sender.sendMessage("Nuking the game area...");
                 int radius = Integer.parseInt(args[1]);
-                Utils.nukeGameArea(player.getLocation(), radius);
+                Utils.nukeGameArea(player.getLocation(), radius)
+                        .thenAccept(blocksCleared -> sender.sendMessage("Nuke finished. " + blocksCleared + " blocks were removed."));
                 break;
+            case "blockqueue":
+                // Shows how the block write queue keeps up, so the tick budget can be tuned under load.
+                BlockWriteQueue.Stats stats = MinigamePlugin.getBlockWriteQueue().getStats();
+                sender.sendMessage("Block write queue: budget " + MinigamePlugin.getBlockWriteQueue().getTickBudgetNanos() / 1_000_000.0 + "ms per tick");
+                sender.sendMessage("Last tick: " + stats.lastFlushApplied() + " writes applied, " + stats.lastFlushCoalesced() + " coalesced, took " + stats.lastFlushNanos() / 1_000_000.0 + "ms");
+                sender.sendMessage("Pending: " + stats.pendingWrites() + " positions (critical lane " + stats.criticalLaneLength() + ", cosmetic lane " + stats.cosmeticLaneLength() + ")");
+                sender.sendMessage("Total: " + stats.totalApplied() + " applied, " + stats.totalCoalesced() + " coalesced");
+                break;
+            case "trace":
+                return handleTraceCommand(sender, args);
             default:
                 sender.sendMessage("Invalid command.");
                 return false;
@@ -49,10 +68,76 @@ public class MiscCommands implements CommandExecutor, TabExecutor {
         return true;
     }
 
+    /**
+     * /misc trace level [off|info|debug] - shows or sets what is traced.
+     * /misc trace tail [amount] - shows the newest events in chat.
+     * /misc trace dump - writes every buffered event to a file in the plugin's folder.
+     * /misc trace clear - forgets the buffered events.
+     */
+    private boolean handleTraceCommand(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            sender.sendMessage("Trace level is " + Trace.getLevel() + ". " + Trace.getRecordedCount() + " events were recorded since the server started.");
+            return true;
+        }
+
+        switch (args[1].toLowerCase()) {
+            case "level":
+                if (args.length < 3) {
+                    sender.sendMessage("Trace level is " + Trace.getLevel() + ".");
+                    return true;
+                }
+                try {
+                    Trace.setLevel(TraceLevel.valueOf(args[2].toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    sender.sendMessage("Invalid trace level.");
+                    return false;
+                }
+                sender.sendMessage("Trace level set to " + Trace.getLevel() + ".");
+                break;
+            case "tail":
+                int amount = args.length >= 3 && args[2].matches("\\d+") ? Integer.parseInt(args[2]) : 20;
+                long now = System.nanoTime();
+                for (Trace.Record record : Trace.snapshot(amount)) {
+                    sender.sendMessage(record.format(now));
+                }
+                break;
+            case "dump":
+                // The events are formatted here, and written to the file on another thread. The sender is told how it went on the main thread.
+                long dumpTime = System.nanoTime();
+                List<String> lines = new ArrayList<>();
+                for (Trace.Record record : Trace.snapshot(Integer.MAX_VALUE)) {
+                    lines.add(record.format(dumpTime));
+                }
+                File dumpFile = new File(new File(plugin.getDataFolder(), "traces"), "trace-" + System.currentTimeMillis() + ".txt");
+                Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                    try {
+                        dumpFile.getParentFile().mkdirs();
+                        Files.write(dumpFile.toPath(), lines);
+                        Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage("Wrote " + lines.size() + " trace events to " + dumpFile.getName()));
+                    } catch (IOException e) {
+                        Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage("Failed to write the trace: " + e.getMessage()));
+                    }
+                });
+                break;
+            case "clear":
+                Trace.clear();
+                sender.sendMessage("Trace cleared.");
+                break;
+            default:
+                sender.sendMessage("Invalid trace command.");
+                return false;
+        }
+        return true;
+    }
+
     @Override
     public @Nullable List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
         if (args.length == 1) {
-            return List.of("nuke");
+            return List.of("nuke", "blockqueue", "trace");
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("trace")) {
+            return List.of("level", "tail", "dump", "clear");
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("trace") && args[1].equalsIgnoreCase("level")) {
+            return List.of("off", "info", "debug");
         }
         return List.of();
     }
@@ -1,5 +1,7 @@
 package me.stavgordeev.plugin.commands;
 
+import me.stavgordeev.plugin.Tracing.Trace;
+import me.stavgordeev.plugin.Tracing.TraceEvent;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.command.Command;
@@ -86,10 +88,6 @@ public class PushBlockCommand implements CommandExecutor, TabExecutor {
     Material blockType = blockLocation.getBlock().getType();
     Vector blockDirection = blockLocation.getDirection();
 
-    // Debug: Print the current block location and type
-    System.out.println("Current Block Location: " + formatLocation(blockLocation));
-    System.out.println("Current Block Type: " + blockType);
-
     // Set the current block to air
     blockLocation.getBlock().setType(Material.AIR);
 
@@ -109,18 +107,13 @@ public class PushBlockCommand implements CommandExecutor, TabExecutor {
             break;
     }
 
-    // Debug: Print the new block location
-    System.out.println("New Block Location: " + formatLocation(blockLocation));
-
     // Set the new block location to the original block type
     blockLocation.getBlock().setType(blockType);
 
     // Apply the copied direction to the new block location
     blockLocation.setDirection(blockDirection);
 
-    // Debug: Print the final block location and type
-    System.out.println("Final Block Location: " + formatLocation(blockLocation));
-    System.out.println("Final Block Type: " + blockLocation.getBlock().getType());
+    Trace.record(TraceEvent.BLOCK_PUSHED, blockLocation.getBlockX(), blockLocation.getBlockY(), blockLocation.getBlockZ(), blockType.ordinal());
 }
 
 
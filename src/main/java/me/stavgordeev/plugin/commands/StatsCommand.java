@@ -0,0 +1,26 @@
+package me.stavgordeev.plugin.commands;
+
+import me.stavgordeev.plugin.Metrics.Metrics;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * /mg_stats [filter] - shows the plugin's metrics in chat. Only the metrics whose name contains the filter are shown, if one is given.
+ */
+public class StatsCommand implements CommandExecutor {
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, String[] args) {
+        String filter = args.length > 0 ? args[0].toLowerCase() : "";
+
+        int shown = 0;
+        for (String line : Metrics.summaryLines()) {
+            if (!line.contains(filter)) continue;
+            sender.sendMessage(line);
+            shown++;
+        }
+        if (shown == 0) sender.sendMessage("No metrics were recorded yet.");
+        return true;
+    }
+}